@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.here.sdk.search.GeocodingCallback;
+import com.here.sdk.search.GeocodingResult;
+import com.here.sdk.search.SearchError;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Geocodes a list of addresses, e.g. the delivery addresses of a day, with a fixed number of
+ * requests in flight. Addresses are taken from the iterator only when a request can start, and
+ * each result is reported as soon as it arrives, in completion order. Requests that fail with
+ * a transient error are retried with exponential backoff.
+ *
+ * Expected to be used from the main thread, on which the geocoder delivers its callbacks.
+ */
+public class BatchGeocoder {
+
+    // By name, as the SearchError values differ between SDK versions.
+    private static final Set<String> TRANSIENT_ERRORS = new HashSet<>(Arrays.asList(
+            "HTTP_ERROR", "SERVER_UNREACHABLE", "TIMED_OUT", "OFFLINE", "EXCEEDED_USAGE_LIMIT"));
+
+    /**
+     * Geocodes one address; the callback is called on the main thread.
+     */
+    public interface Geocoder {
+        void geocode(String address, GeocodingCallback callback);
+    }
+
+    public interface Listener {
+        /**
+         * @param index       position of the address in the input, counting skipped blank lines.
+         * @param result      best match, or null if the address could not be geocoded.
+         * @param searchError the last error, or null.
+         */
+        void onGeocoded(int index, String address, @Nullable GeocodingResult result,
+                        @Nullable SearchError searchError);
+
+        void onFinished(int geocodedCount, int failedCount);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Geocoder geocoder;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    // Incremented for every batch and cancel, so that stale callbacks can be recognized.
+    private long generation;
+    private Iterator<String> addresses;
+    private Listener listener;
+    private int nextIndex;
+    // Requests running or waiting for a retry.
+    private int inFlight;
+    private int geocodedCount;
+    private int failedCount;
+    private boolean startingRequests;
+
+    /**
+     * @param parallelism maximum number of requests in flight, including those waiting for a retry.
+     * @param maxAttempts attempts per address, including the first one.
+     */
+    public BatchGeocoder(Geocoder geocoder, int parallelism, int maxAttempts,
+                         long initialBackoffMillis, long maxBackoffMillis) {
+        if (parallelism < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("parallelism and maxAttempts must be at least 1");
+        }
+        this.geocoder = geocoder;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Cancels the running batch, if any, and starts geocoding the addresses.
+     */
+    public void start(Iterator<String> addresses, Listener listener) {
+        cancel();
+        this.addresses = addresses;
+        this.listener = listener;
+        nextIndex = 0;
+        geocodedCount = 0;
+        failedCount = 0;
+        startRequests();
+    }
+
+    /**
+     * Drops the remaining addresses and the results of requests still in flight.
+     */
+    public void cancel() {
+        generation++;
+        handler.removeCallbacksAndMessages(null);
+        addresses = null;
+        listener = null;
+        inFlight = 0;
+    }
+
+    public boolean isRunning() {
+        return addresses != null;
+    }
+
+    private void startRequests() {
+        if (startingRequests) {
+            // A result arrived synchronously, e.g. from a cache; the loop below fills its place.
+            return;
+        }
+        startingRequests = true;
+        try {
+            while (addresses != null && inFlight < parallelism && addresses.hasNext()) {
+                int index = nextIndex++;
+                String address = addresses.next().trim();
+                if (!address.isEmpty()) {
+                    request(index, address, 1);
+                }
+            }
+        } finally {
+            startingRequests = false;
+        }
+        if (addresses != null && inFlight == 0 && !addresses.hasNext()) {
+            Listener finishedListener = listener;
+            addresses = null;
+            listener = null;
+            finishedListener.onFinished(geocodedCount, failedCount);
+        }
+    }
+
+    private void request(int index, String address, int attempt) {
+        inFlight++;
+        long requestGeneration = generation;
+        geocoder.geocode(address, (searchError, results) -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            if (searchError != null && TRANSIENT_ERRORS.contains(searchError.name()) && attempt < maxAttempts) {
+                // The request keeps its place while it waits, so retries slow the batch down
+                // instead of adding load.
+                handler.postDelayed(() -> {
+                    inFlight--;
+                    request(index, address, attempt + 1);
+                }, backoffMillis(attempt));
+                return;
+            }
+
+            inFlight--;
+            GeocodingResult result = searchError == null && results != null && !results.isEmpty()
+                    ? results.get(0) : null;
+            if (result != null) {
+                geocodedCount++;
+            } else {
+                failedCount++;
+            }
+            listener.onGeocoded(index, address, result, searchError);
+            if (requestGeneration == generation) {
+                startRequests();
+            }
+        });
+    }
+
+    // Doubles with every attempt, with jitter so that failed requests do not retry in lockstep.
+    private long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+    }
+}
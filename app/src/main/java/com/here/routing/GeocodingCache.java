@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.BoundedLruCache;
+import com.here.routing.core.DiskCache;
+import com.here.routing.core.GeocodedAddress;
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.LanguageCode;
+import com.here.sdk.search.GeocodingResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Memory-bounded LRU cache for geocoding results, so that repeating a search in the same
+ * viewport does not hit the GeocodingEngine again. Empty result lists are cached as well.
+ *
+ * Besides the results of the engine, an entry can hold the addresses read back from a
+ * {@link DiskCache}, which keep only the address text and coordinates of each result.
+ */
+public class GeocodingCache {
+
+    // Rough per-object overheads in bytes, used to estimate the memory held by an entry.
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int RESULT_OVERHEAD_BYTES = 160;
+
+    // Exactly one of the lists is set.
+    private static final class Entry {
+        @Nullable
+        final List<GeocodingResult> results;
+        @Nullable
+        final List<GeocodedAddress> addresses;
+
+        Entry(@Nullable List<GeocodingResult> results, @Nullable List<GeocodedAddress> addresses) {
+            this.results = results;
+            this.addresses = addresses;
+        }
+    }
+
+    private final BoundedLruCache<Key, Entry> cache;
+    private final double gridSizeInDegrees;
+
+    /**
+     * @param maxBytes          memory budget for all cached result lists.
+     * @param gridSizeInDegrees viewport corners are snapped to this grid, so that slightly
+     *                          panned viewports still share a cache entry.
+     */
+    public GeocodingCache(long maxBytes, double gridSizeInDegrees) {
+        this.gridSizeInDegrees = gridSizeInDegrees;
+        cache = new BoundedLruCache<>(maxBytes, (key, entry) -> estimateSize(key, entry));
+    }
+
+    /**
+     * @return the results of the engine, or null if there are none, even if there are addresses.
+     */
+    @Nullable
+    public List<GeocodingResult> get(GeoBox geoBox, String query, LanguageCode languageCode, long maxResultCount) {
+        Entry entry = cache.get(createKey(geoBox, query, languageCode, maxResultCount));
+        return entry != null ? entry.results : null;
+    }
+
+    /**
+     * @return the addresses put with {@link #putAddresses}, or null if there are none.
+     */
+    @Nullable
+    public List<GeocodedAddress> getAddresses(GeoBox geoBox, String query, LanguageCode languageCode,
+                                              long maxResultCount) {
+        Entry entry = cache.get(createKey(geoBox, query, languageCode, maxResultCount));
+        return entry != null ? entry.addresses : null;
+    }
+
+    public void put(GeoBox geoBox, String query, LanguageCode languageCode, long maxResultCount,
+                    @NonNull List<GeocodingResult> results) {
+        cache.put(createKey(geoBox, query, languageCode, maxResultCount),
+                new Entry(Collections.unmodifiableList(results), null));
+    }
+
+    public void putAddresses(GeoBox geoBox, String query, LanguageCode languageCode, long maxResultCount,
+                             @NonNull List<GeocodedAddress> addresses) {
+        cache.put(createKey(geoBox, query, languageCode, maxResultCount),
+                new Entry(null, Collections.unmodifiableList(addresses)));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Key under which the same search is stored in a {@link DiskCache}. Searches that share an
+     * in-memory entry share the persistent entry too.
+     */
+    public String persistentKey(GeoBox geoBox, String query, LanguageCode languageCode, long maxResultCount) {
+        Key key = createKey(geoBox, query, languageCode, maxResultCount);
+        return "geocode:" + key.languageCode + ":" + key.maxResultCount + ":"
+                + key.south + "," + key.west + "," + key.north + "," + key.east + ":" + key.query;
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    public long getSizeInBytes() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public String toString() {
+        return "GeocodingCache: " + cache;
+    }
+
+    static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private Key createKey(GeoBox geoBox, String query, LanguageCode languageCode, long maxResultCount) {
+        return new Key(normalizeQuery(query), languageCode, maxResultCount,
+                quantize(geoBox.southWestCorner.latitude),
+                quantize(geoBox.southWestCorner.longitude),
+                quantize(geoBox.northEastCorner.latitude),
+                quantize(geoBox.northEastCorner.longitude));
+    }
+
+    private int quantize(double degrees) {
+        return (int) Math.round(degrees / gridSizeInDegrees);
+    }
+
+    private static int estimateSize(Key key, Entry entry) {
+        int size = ENTRY_OVERHEAD_BYTES + 2 * key.query.length();
+        if (entry.results != null) {
+            for (GeocodingResult result : entry.results) {
+                size += RESULT_OVERHEAD_BYTES;
+                if (result.address != null && result.address.addressText != null) {
+                    size += 2 * result.address.addressText.length();
+                }
+            }
+        }
+        if (entry.addresses != null) {
+            for (GeocodedAddress address : entry.addresses) {
+                size += RESULT_OVERHEAD_BYTES;
+                if (address.addressText != null) {
+                    size += 2 * address.addressText.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static final class Key {
+        final String query;
+        final LanguageCode languageCode;
+        final long maxResultCount;
+        final int south;
+        final int west;
+        final int north;
+        final int east;
+
+        Key(String query, LanguageCode languageCode, long maxResultCount,
+            int south, int west, int north, int east) {
+            this.query = query;
+            this.languageCode = languageCode;
+            this.maxResultCount = maxResultCount;
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return maxResultCount == other.maxResultCount
+                    && south == other.south && west == other.west
+                    && north == other.north && east == other.east
+                    && languageCode == other.languageCode
+                    && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query.hashCode();
+            result = 31 * result + (languageCode != null ? languageCode.hashCode() : 0);
+            result = 31 * result + (int) (maxResultCount ^ (maxResultCount >>> 32));
+            result = 31 * result + south;
+            result = 31 * result + west;
+            result = 31 * result + north;
+            result = 31 * result + east;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.here.routing.core.RouteManeuver;
+import com.here.routing.core.RouteResult;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.Maneuver;
+import com.here.sdk.routing.Route;
+import com.here.sdk.routing.RouteLeg;
+import com.here.sdk.routing.RoutingEngine;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Routes with the online RoutingEngine of the HERE SDK. The routes are converted on a worker
+ * thread, as iterating all legs and maneuvers of a long route takes a while.
+ *
+ * Results that arrive after {@link #shutdown()} are dropped.
+ */
+public class HereRoutingBackend implements RoutingBackend {
+
+    private final RoutingEngine routingEngine;
+    private final ExecutorService conversionExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public HereRoutingBackend(RoutingEngine routingEngine) {
+        this.routingEngine = routingEngine;
+    }
+
+    @Override
+    public void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, Callback callback) {
+        routingEngine.calculateRoute(waypoints, carOptions, (routingError, routes) -> {
+            if (conversionExecutor.isShutdown()) {
+                // Shut down with the activity; nobody waits for the result any more.
+                return;
+            }
+            if (routingError != null || routes == null) {
+                callback.onRouteCalculated(routingError, null);
+                return;
+            }
+            conversionExecutor.execute(() -> {
+                List<RouteResult> results = new ArrayList<>(routes.size());
+                for (Route route : routes) {
+                    results.add(toRouteResult(route));
+                }
+                mainHandler.post(() -> {
+                    if (!conversionExecutor.isShutdown()) {
+                        callback.onRouteCalculated(null, results);
+                    }
+                });
+            });
+        });
+    }
+
+    public void shutdown() {
+        conversionExecutor.shutdownNow();
+    }
+
+    public static RouteResult toRouteResult(Route route) {
+        List<List<RouteManeuver>> legManeuvers = new ArrayList<>();
+        for (RouteLeg routeLeg : route.getLegs()) {
+            List<Maneuver> maneuvers = routeLeg.getManeuvers();
+            List<RouteManeuver> routeManeuvers = new ArrayList<>(maneuvers.size());
+            for (Maneuver maneuver : maneuvers) {
+                GeoCoordinates location = maneuver.getCoordinates();
+                routeManeuvers.add(new RouteManeuver(maneuver.getText(), maneuver.getAction().name(),
+                        location.latitude, location.longitude));
+            }
+            legManeuvers.add(routeManeuvers);
+        }
+        return new RouteResult(PackedShapes.fromGeoCoordinates(route.getShape()),
+                route.getLengthInMeters(), route.getTravelTimeInSeconds(), legManeuvers);
+    }
+}
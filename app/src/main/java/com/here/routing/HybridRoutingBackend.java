@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.util.Log;
+
+import com.here.routing.core.PackedShape;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.List;
+
+/**
+ * Answers short trips with the offline backend and everything else with the online one.
+ * If the online backend fails, e.g. without connectivity, the offline backend is tried as well.
+ */
+public class HybridRoutingBackend implements RoutingBackend {
+
+    private static final String TAG = HybridRoutingBackend.class.getName();
+
+    private final RoutingBackend onlineBackend;
+    private final OfflineRoutingBackend offlineBackend;
+    private final double maxOfflineTripLengthInMeters;
+
+    /**
+     * @param maxOfflineTripLengthInMeters trips whose waypoints are, summed up in straight
+     *                                     lines, at most this long are routed offline first.
+     */
+    public HybridRoutingBackend(RoutingBackend onlineBackend, OfflineRoutingBackend offlineBackend,
+                                double maxOfflineTripLengthInMeters) {
+        this.onlineBackend = onlineBackend;
+        this.offlineBackend = offlineBackend;
+        this.maxOfflineTripLengthInMeters = maxOfflineTripLengthInMeters;
+    }
+
+    @Override
+    public void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, Callback callback) {
+        if (!offlineBackend.isAvailable()) {
+            onlineBackend.calculateRoute(waypoints, carOptions, callback);
+            return;
+        }
+
+        if (straightLineLength(waypoints) <= maxOfflineTripLengthInMeters) {
+            offlineBackend.calculateRoute(waypoints, carOptions, (routingError, routes) -> {
+                if (routingError == null) {
+                    callback.onRouteCalculated(null, routes);
+                } else {
+                    Log.d(TAG, "Offline routing failed, trying online: " + routingError.name());
+                    onlineBackend.calculateRoute(waypoints, carOptions, callback);
+                }
+            });
+            return;
+        }
+
+        onlineBackend.calculateRoute(waypoints, carOptions, (routingError, routes) -> {
+            if (routingError == null) {
+                callback.onRouteCalculated(null, routes);
+                return;
+            }
+            Log.d(TAG, "Online routing failed, trying offline: " + routingError.name());
+            offlineBackend.calculateRoute(waypoints, carOptions, (offlineError, offlineRoutes) -> {
+                // Report the original error if the offline backend cannot help either.
+                callback.onRouteCalculated(offlineError == null ? null : routingError, offlineRoutes);
+            });
+        });
+    }
+
+    private static double straightLineLength(List<Waypoint> waypoints) {
+        double length = 0;
+        for (int i = 1; i < waypoints.size(); i++) {
+            GeoCoordinates from = waypoints.get(i - 1).coordinates;
+            GeoCoordinates to = waypoints.get(i).coordinates;
+            length += PackedShape.distanceInMeters(from.latitude, from.longitude, to.latitude, to.longitude);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.PolylineChunks;
+import com.here.routing.core.PolylineSimplifier;
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.GeoPolyline;
+import com.here.sdk.core.errors.InstantiationErrorException;
+import com.here.sdk.mapviewlite.Camera;
+import com.here.sdk.mapviewlite.CameraObserver;
+import com.here.sdk.mapviewlite.CameraUpdate;
+import com.here.sdk.mapviewlite.MapPolyline;
+import com.here.sdk.mapviewlite.MapPolylineStyle;
+import com.here.sdk.mapviewlite.MapScene;
+
+import java.util.Arrays;
+
+/**
+ * Shows a route shape with a level of detail that matches the zoom level. All levels are
+ * simplified once when the route is shown; zooming only swaps map polylines in the scene.
+ * The polyline of a chunk is only created when the chunk comes into view.
+ *
+ * Each level is split into chunks of about a screen in size. Only the chunks that intersect
+ * the viewport plus a margin are in the scene, so long routes cost no more than short ones
+ * when zoomed in. The chunks are updated when the viewport leaves the area they were chosen for.
+ *
+ * The simplification can run on a worker thread with {@link #simplify(PackedShape)}, so that
+ * the main thread only creates and adds the map polylines.
+ */
+public class LodRoutePolyline implements CameraObserver {
+
+    private static final String TAG = LodRoutePolyline.class.getName();
+
+    // Each level is used from its zoom level up to the next one. Above the last level,
+    // the full shape is shown.
+    private static final int[] LOD_ZOOM_LEVELS = {0, 6, 9, 12, 15};
+    private static final int FULL_DETAIL_ZOOM_LEVEL = 17;
+    private static final double TOLERANCE_IN_PIXELS = 1.0;
+    // Span of a chunk at the highest zoom level of its level of detail.
+    private static final double CHUNK_SIZE_IN_PIXELS = 1024;
+    private static final int MAX_CHUNK_VERTICES = 1000;
+    // Part of the viewport size added on each side, so that small pans need no update.
+    private static final double VIEWPORT_MARGIN = 0.5;
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+
+    /**
+     * The simplified shapes of all levels, split into chunks.
+     */
+    public static final class Levels {
+        private final PackedShape shape;
+        private final PolylineChunks[] chunks;
+        // The vertices kept on each level, by index into the shape; null where all are kept.
+        private final int[][] keptIndices;
+
+        private Levels(PackedShape shape, PolylineChunks[] chunks, int[][] keptIndices) {
+            this.shape = shape;
+            this.chunks = chunks;
+            this.keptIndices = keptIndices;
+        }
+
+        private GeoPolyline toGeoPolyline(int level, int chunk) throws InstantiationErrorException {
+            int start = chunks[level].start(chunk);
+            int end = chunks[level].end(chunk);
+            return keptIndices[level] != null
+                    ? PackedShapes.toGeoPolyline(shape, keptIndices[level], start, end)
+                    : PackedShapes.toGeoPolyline(shape, start, end);
+        }
+    }
+
+    private final MapScene mapScene;
+    private final Camera camera;
+    private final Levels levels;
+    private final MapPolylineStyle mapPolylineStyle;
+    // Chunks of the shown level that are in the scene, by chunk number.
+    private SparseArray<MapPolyline> shownChunks = new SparseArray<>();
+    private int shownLevel = -1;
+    private final int[] visibleChunks;
+    // The area for which the shown chunks were chosen.
+    private double shownSouth;
+    private double shownWest;
+    private double shownNorth;
+    private double shownEast;
+
+    public LodRoutePolyline(MapScene mapScene, Camera camera,
+                            PackedShape shape, MapPolylineStyle mapPolylineStyle) {
+        this(mapScene, camera, simplify(shape), mapPolylineStyle);
+    }
+
+    public LodRoutePolyline(MapScene mapScene, Camera camera,
+                            Levels simplifiedLevels, MapPolylineStyle mapPolylineStyle) {
+        this.mapScene = mapScene;
+        this.camera = camera;
+        this.levels = simplifiedLevels;
+        this.mapPolylineStyle = mapPolylineStyle;
+        int maxChunkCount = 0;
+        for (PolylineChunks chunks : simplifiedLevels.chunks) {
+            maxChunkCount = Math.max(maxChunkCount, chunks.size());
+        }
+        visibleChunks = new int[maxChunkCount];
+    }
+
+    /**
+     * Simplifies the shape for all levels. Does not touch the map, so it may be called on any thread.
+     */
+    public static Levels simplify(PackedShape shape) {
+        int levelCount = LOD_ZOOM_LEVELS.length + 1;
+        PolylineChunks[] chunks = new PolylineChunks[levelCount];
+        int[][] keptIndices = new int[levelCount][];
+        int count = shape.size();
+        PolylineSimplifier simplifier = new PolylineSimplifier();
+        int[] indices = new int[count];
+        double referenceLatitude = shape.latitude(count / 2);
+        int chunkCount = 0;
+        for (int level = 0; level < levelCount; level++) {
+            // Pixels get smaller while zooming in, so the tolerance must fit the highest zoom level
+            // at which this level is still shown.
+            int maxZoomLevel = level + 1 < LOD_ZOOM_LEVELS.length
+                    ? LOD_ZOOM_LEVELS[level + 1] : FULL_DETAIL_ZOOM_LEVEL;
+            double metersPerPixel = PolylineSimplifier.metersPerPixel(maxZoomLevel, referenceLatitude);
+            int keptCount;
+            if (level < LOD_ZOOM_LEVELS.length) {
+                keptCount = simplifier.simplify(shape, TOLERANCE_IN_PIXELS * metersPerPixel, indices);
+                keptIndices[level] = Arrays.copyOf(indices, keptCount);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    indices[i] = i;
+                }
+                keptCount = count;
+            }
+            double latitudeSpan = CHUNK_SIZE_IN_PIXELS * metersPerPixel / METERS_PER_DEGREE_LATITUDE;
+            double longitudeSpan = latitudeSpan / Math.max(Math.cos(Math.toRadians(referenceLatitude)), 0.01);
+            chunks[level] = PolylineChunks.split(shape, indices, keptCount,
+                    latitudeSpan, longitudeSpan, MAX_CHUNK_VERTICES);
+            chunkCount += chunks[level].size();
+        }
+        Log.d(TAG, "Route with " + count + " vertices simplified into " + levelCount + " levels, "
+                + chunkCount + " chunks.");
+        return new Levels(shape, chunks, keptIndices);
+    }
+
+    public void attach() {
+        camera.addObserver(this);
+        update(camera.getZoomLevel());
+    }
+
+    public void detach() {
+        camera.removeObserver(this);
+        for (int i = 0; i < shownChunks.size(); i++) {
+            mapScene.removeMapPolyline(shownChunks.valueAt(i));
+        }
+        shownChunks.clear();
+        shownLevel = -1;
+    }
+
+    @Override
+    public void onCameraUpdated(CameraUpdate cameraUpdate) {
+        update(cameraUpdate.zoomLevel);
+    }
+
+    /**
+     * Number of map polylines in the scene.
+     */
+    public int getShownChunkCount() {
+        return shownChunks.size();
+    }
+
+    private void update(double zoomLevel) {
+        int level = levelForZoom(zoomLevel);
+        GeoBox viewport = camera.getBoundingRect();
+        double south = viewport.southWestCorner.latitude;
+        double west = viewport.southWestCorner.longitude;
+        double north = viewport.northEastCorner.latitude;
+        double east = viewport.northEastCorner.longitude;
+        if (level == shownLevel && south >= shownSouth && north <= shownNorth
+                && contains(shownWest, shownEast, west, east)) {
+            return;
+        }
+
+        double latitudeMargin = (north - south) * VIEWPORT_MARGIN;
+        double longitudeMargin = longitudeSpan(west, east) * VIEWPORT_MARGIN;
+        shownSouth = Math.max(south - latitudeMargin, -90);
+        shownNorth = Math.min(north + latitudeMargin, 90);
+        if (longitudeSpan(west, east) + 2 * longitudeMargin >= 360) {
+            shownWest = -180;
+            shownEast = 180;
+        } else {
+            shownWest = wrapLongitude(west - longitudeMargin);
+            shownEast = wrapLongitude(east + longitudeMargin);
+        }
+        show(level);
+    }
+
+    // Adds the chunks of the level in the shown area before removing the others, so that
+    // the route never disappears while panning. Chunks already in the scene stay.
+    private void show(int level) {
+        int visibleCount = levels.chunks[level].findIntersecting(
+                shownSouth, shownWest, shownNorth, shownEast, visibleChunks);
+        SparseArray<MapPolyline> previousChunks = shownChunks;
+        SparseArray<MapPolyline> nextChunks = new SparseArray<>(visibleCount);
+        for (int i = 0; i < visibleCount; i++) {
+            int chunk = visibleChunks[i];
+            MapPolyline mapPolyline = level == shownLevel ? previousChunks.get(chunk) : null;
+            if (mapPolyline != null) {
+                previousChunks.remove(chunk);
+            } else {
+                try {
+                    mapPolyline = new MapPolyline(levels.toGeoPolyline(level, chunk), mapPolylineStyle);
+                } catch (InstantiationErrorException e) {
+                    // Chunks have at least two vertices, so this should never happen.
+                    Log.e(TAG, "Chunk " + chunk + " of level " + level + " cannot be shown: " + e.error.name());
+                    continue;
+                }
+                mapScene.addMapPolyline(mapPolyline);
+            }
+            nextChunks.append(chunk, mapPolyline);
+        }
+        for (int i = 0; i < previousChunks.size(); i++) {
+            mapScene.removeMapPolyline(previousChunks.valueAt(i));
+        }
+        shownChunks = nextChunks;
+        shownLevel = level;
+    }
+
+    private static int levelForZoom(double zoomLevel) {
+        if (zoomLevel >= FULL_DETAIL_ZOOM_LEVEL) {
+            return LOD_ZOOM_LEVELS.length;
+        }
+        int level = 0;
+        while (level + 1 < LOD_ZOOM_LEVELS.length && zoomLevel >= LOD_ZOOM_LEVELS[level + 1]) {
+            level++;
+        }
+        return level;
+    }
+
+    // Longitude ranges with west greater than east cross the antimeridian.
+    private static double longitudeSpan(double west, double east) {
+        return west <= east ? east - west : east - west + 360;
+    }
+
+    private static boolean contains(double outerWest, double outerEast, double west, double east) {
+        double outerSpan = longitudeSpan(outerWest, outerEast);
+        if (outerSpan >= 360) {
+            return true;
+        }
+        double offset = west - outerWest;
+        if (offset < 0) {
+            offset += 360;
+        }
+        return offset + longitudeSpan(west, east) <= outerSpan;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+}
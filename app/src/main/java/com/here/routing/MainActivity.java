@@ -24,6 +24,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
@@ -33,23 +35,50 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.View;
+import android.widget.Toast;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.here.routing.StartupOrchestrator.Step;
+import com.here.sdk.core.GeoBox;
 import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.errors.InstantiationErrorException;
 import com.here.sdk.mapviewlite.MapScene;
 import com.here.sdk.mapviewlite.MapStyle;
 import com.here.sdk.mapviewlite.MapViewLite;
+import com.here.sdk.routing.RoutingEngine;
+import com.here.sdk.search.GeocodingEngine;
+
+import java.util.EnumSet;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getSimpleName();
+    private static final long LOCATION_UPDATE_INTERVAL_MILLIS = 1000;
+    private static final long FIRST_LOCATION_TIMEOUT_MILLIS = 10_000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final StartupOrchestrator startup = new StartupOrchestrator();
+    private RoutingEngine routingEngine;
+    private GeocodingEngine geocodingEngine;
 
     private PermissionsRequestor permissionsRequestor;
     private MapViewLite mapView;
     private RoutingExample routingExample;
     private FusedLocationProviderClient fusedLocationClient;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            Location location = locationResult.getLastLocation();
+            if (location != null) {
+                onLocationUpdated(location);
+            }
+        }
+    };
     public GeoCoordinates lastKnownLocation;
     public String finalLocation;
 
@@ -64,10 +93,16 @@ public class MainActivity extends AppCompatActivity {
         mapView.onCreate(savedInstanceState);
 
 
+        // The engines, the map scene and the first location fix do not depend on each other,
+        // so they are started together. Engine creation is the slow part and runs off the main thread.
+        startup.runAfter(EnumSet.of(Step.ENGINES, Step.MAP_SCENE), this::createRoutingExample);
+        createEnginesInBackground();
+        // Created first: the permissions callback may start location updates right away.
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         handleAndroidPermissions();
         handleIntent(getIntent());
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         fetchLocation();
+        handler.postDelayed(this::onFirstLocationTimeout, FIRST_LOCATION_TIMEOUT_MILLIS);
 
 
     }
@@ -96,15 +131,23 @@ public class MainActivity extends AppCompatActivity {
             //https://developer.android.com/reference/android/widget/SearchView.OnQueryTextListener#onQueryTextSubmit(java.lang.String)
             @Override
             public boolean onQueryTextSubmit(String query) {
-                routingExample.saveLocation(lastKnownLocation.latitude, lastKnownLocation.longitude);       //gets last known location (current location)
-                routingExample.getFinalLocation(query);                                                     //gets destination location
-                routingExample.geocodeAnAddress();                                                          //searches for the destination location
+                runWhenReady(() -> {
+                    routingExample.saveLocation(lastKnownLocation.latitude, lastKnownLocation.longitude);   //gets last known location (current location)
+                    routingExample.getFinalLocation(query);                                                 //gets destination location
+                    routingExample.geocodeAnAddress();                                                      //searches for the destination location
+                });
                 return true;    //by returning true to indicate that it has handled the submit request.
             }
 
+            //Called on every keystroke. Suggestions are debounced, so fast typing does not
+            // trigger a search per character.
             @Override
             public boolean onQueryTextChange(String newText) {
-                return false;
+                if (routingExample == null) {
+                    return false;
+                }
+                routingExample.onQueryTextChanged(newText);
+                return true;
             }
         });
 
@@ -125,6 +168,7 @@ public class MainActivity extends AppCompatActivity {
                             Double longitude = location.getLongitude();
 
                             lastKnownLocation = new GeoCoordinates(latitude, longitude);
+                            startup.markDone(Step.LOCATION);
 
                             Log.d("Last known location: ", "Latitude = " + latitude + "\nLongitude = " + longitude);
 
@@ -134,6 +178,53 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    // Streams fixes while the activity is in the foreground, so the start of a route is never
+    // a stale position and a shown route can be followed.
+    private void startLocationUpdates() {
+        LocationRequest locationRequest = LocationRequest.create()
+                .setInterval(LOCATION_UPDATE_INTERVAL_MILLIS)
+                .setFastestInterval(LOCATION_UPDATE_INTERVAL_MILLIS / 2)
+                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+        try {
+            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            // Retried once the permissions are granted.
+            Log.e(TAG, "Location permission missing: " + e.getMessage());
+        }
+    }
+
+    private void stopLocationUpdates() {
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+    }
+
+    private void onLocationUpdated(Location location) {
+        lastKnownLocation = new GeoCoordinates(location.getLatitude(), location.getLongitude());
+        startup.markDone(Step.LOCATION);
+        if (routingExample != null) {
+            routingExample.onLocationUpdated(location.getLatitude(), location.getLongitude(),
+                    location.hasAccuracy() ? location.getAccuracy() : 0,
+                    location.getElapsedRealtimeNanos() / 1_000_000);
+        }
+    }
+
+    // Without any fix, e.g. indoors, queued actions should not wait forever: the center of the
+    // map stands in for the location until a fix arrives.
+    private void onFirstLocationTimeout() {
+        if (startup.isDone(Step.LOCATION)) {
+            return;
+        }
+        startup.runAfter(EnumSet.of(Step.MAP_SCENE), () -> {
+            if (lastKnownLocation == null) {
+                GeoBox geoBox = mapView.getCamera().getBoundingRect();
+                lastKnownLocation = new GeoCoordinates(
+                        (geoBox.southWestCorner.latitude + geoBox.northEastCorner.latitude) / 2,
+                        (geoBox.southWestCorner.longitude + geoBox.northEastCorner.longitude) / 2);
+                Log.w(TAG, "No location fix yet, starting from the map center.");
+            }
+            startup.markDone(Step.LOCATION);
+        });
+    }
+
     public GeoCoordinates getLastKnownLocation() {
         return lastKnownLocation;
     }
@@ -145,6 +236,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void permissionsGranted() {
                 loadMapScene();
+                startLocationUpdates();
             }
 
             @Override
@@ -165,7 +257,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onLoadScene(@Nullable MapScene.ErrorCode errorCode) {
                 if (errorCode == null) {
-                    routingExample = new RoutingExample(MainActivity.this, mapView);
+                    startup.markDone(Step.MAP_SCENE);
                 } else {
                     Log.d(TAG, "onLoadScene failed: " + errorCode.toString());
                 }
@@ -173,39 +265,89 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private void createEnginesInBackground() {
+        new Thread(() -> {
+            RoutingEngine newRoutingEngine = null;
+            GeocodingEngine newGeocodingEngine = null;
+            try {
+                newRoutingEngine = new RoutingEngine();
+            } catch (InstantiationErrorException e) {
+                Log.e(TAG, "Initialization of RoutingEngine failed: " + e.error.name());
+            }
+            try {
+                newGeocodingEngine = new GeocodingEngine();
+            } catch (InstantiationErrorException e) {
+                Log.e(TAG, "Initialization of GeocodingEngine failed: " + e.error.name());
+            }
+
+            RoutingEngine createdRoutingEngine = newRoutingEngine;
+            GeocodingEngine createdGeocodingEngine = newGeocodingEngine;
+            handler.post(() -> {
+                routingEngine = createdRoutingEngine;
+                geocodingEngine = createdGeocodingEngine;
+                startup.markDone(Step.ENGINES);
+            });
+        }, "EngineInit").start();
+    }
+
+    private void createRoutingExample() {
+        routingExample = new RoutingExample(MainActivity.this, mapView, routingEngine, geocodingEngine);
+        routingExample.setRouteShownListener(startup::onRouteShown);
+        if (lastKnownLocation != null) {
+            routingExample.saveLocation(lastKnownLocation.latitude, lastKnownLocation.longitude);
+        }
+    }
+
+    // User actions before the startup is complete are queued instead of failing on missing state.
+    private void runWhenReady(Runnable action) {
+        if (!startup.runWhenReady(action)) {
+            Toast.makeText(this, "Still starting up, please wait a moment.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     public void addRouteButtonClicked(View view) {
-        //fetchLocation();
-        routingExample.saveLocation(lastKnownLocation.latitude, lastKnownLocation.longitude);
-        routingExample.addRoute();
+        runWhenReady(() -> {
+            routingExample.saveLocation(lastKnownLocation.latitude, lastKnownLocation.longitude);
+            routingExample.addRoute();
+        });
     }
 
     public void destinationButtonClicked(View view) {
-        routingExample.onGeocodeButtonClicked();
+        runWhenReady(() -> routingExample.onGeocodeButtonClicked());
     }
 
     public void addWaypointsButtonClicked(View view) {
-        routingExample.addWaypoints();
+        runWhenReady(() -> routingExample.addWaypoints());
     }
 
     public void clearMapButtonClicked(View view) {
-        routingExample.clearMap();
+        runWhenReady(() -> routingExample.clearMap());
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         mapView.onPause();
+        stopLocationUpdates();
+        if (routingExample != null) {
+            routingExample.onPause();
+        }
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         mapView.onResume();
+        startLocationUpdates();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        handler.removeCallbacksAndMessages(null);
         mapView.onDestroy();
+        if (routingExample != null) {
+            routingExample.onDestroy();
+        }
     }
 }
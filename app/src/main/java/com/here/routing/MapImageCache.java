@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.content.res.Resources;
+import android.util.SparseArray;
+
+import com.here.sdk.core.Anchor2D;
+import com.here.sdk.mapviewlite.MapImage;
+import com.here.sdk.mapviewlite.MapImageFactory;
+import com.here.sdk.mapviewlite.MapMarkerImageStyle;
+
+/**
+ * Decodes each drawable resource used for map markers only once. MapImage instances
+ * can be shared by any number of markers.
+ */
+public class MapImageCache {
+
+    private final Resources resources;
+    private final SparseArray<MapImage> mapImages = new SparseArray<>();
+
+    public MapImageCache(Resources resources) {
+        this.resources = resources;
+    }
+
+    public MapImage getMapImage(int resourceId) {
+        MapImage mapImage = mapImages.get(resourceId);
+        if (mapImage == null) {
+            mapImage = MapImageFactory.fromResource(resources, resourceId);
+            mapImages.put(resourceId, mapImage);
+        }
+        return mapImage;
+    }
+
+    /**
+     * Creates a marker style with the given anchor. Passing null keeps the default anchor.
+     */
+    public static MapMarkerImageStyle createImageStyle(Anchor2D anchor) {
+        MapMarkerImageStyle mapMarkerImageStyle = new MapMarkerImageStyle();
+        if (anchor != null) {
+            mapMarkerImageStyle.setAnchorPoint(anchor);
+        }
+        return mapMarkerImageStyle;
+    }
+
+    public void clear() {
+        mapImages.clear();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.SparseArray;
+
+import com.here.routing.core.GridClusterer;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.mapviewlite.Camera;
+import com.here.sdk.mapviewlite.CameraObserver;
+import com.here.sdk.mapviewlite.CameraUpdate;
+import com.here.sdk.mapviewlite.MapImage;
+import com.here.sdk.mapviewlite.MapImageFactory;
+import com.here.sdk.mapviewlite.MapMarkerImageStyle;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows a set of POIs as one marker per grid cell, labeled with the number of POIs in the cell.
+ * The markers are kept in a {@link RetainedScene} under ids that follow the content of their
+ * cluster, so when the camera crosses a zoom level or the POIs are replaced, only the markers
+ * of cells that changed are replaced.
+ *
+ * Changes by {@link #setPoints(List)} and {@link #clear()} appear with the next commit of the
+ * scene; re-clustering after a zoom change commits the cluster markers by themselves, leaving
+ * other pending changes of the scene for their owner to commit.
+ */
+public class MarkerClusterLayer implements CameraObserver {
+
+    private static final String CLUSTER_MARKER_ID = "cluster:";
+    private static final int MAX_ZOOM_LEVEL = 20;
+    private static final int CELL_SIZE_IN_PIXELS = 64;
+    private static final int CLUSTER_IMAGE_SIZE_IN_PIXELS = 64;
+
+    private final RetainedScene retainedScene;
+    private final Camera camera;
+    private final MapImage poiImage;
+    private final MapMarkerImageStyle poiImageStyle;
+    private final MapMarkerImageStyle clusterImageStyle = new MapMarkerImageStyle();
+    private final SparseArray<MapImage> clusterImages = new SparseArray<>();
+    private final GridClusterer clusterer = new GridClusterer(MAX_ZOOM_LEVEL, CELL_SIZE_IN_PIXELS);
+
+    private List<GridClusterer.Cluster> clusters = Collections.emptyList();
+    private int pointCount;
+    private int renderedZoomLevel = -1;
+
+    public MarkerClusterLayer(RetainedScene retainedScene, Camera camera,
+                              MapImage poiImage, MapMarkerImageStyle poiImageStyle) {
+        this.retainedScene = retainedScene;
+        this.camera = camera;
+        this.poiImage = poiImage;
+        this.poiImageStyle = poiImageStyle;
+        camera.addObserver(this);
+    }
+
+    /**
+     * Stops following the camera. The markers stay in the retained scene.
+     */
+    public void detach() {
+        camera.removeObserver(this);
+    }
+
+    public void setPoints(List<GeoCoordinates> points) {
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            latitudes[i] = points.get(i).latitude;
+            longitudes[i] = points.get(i).longitude;
+        }
+        clusterer.setPoints(latitudes, longitudes, points.size());
+        pointCount = points.size();
+        render((int) Math.floor(camera.getZoomLevel()));
+    }
+
+    public void clear() {
+        clusterer.setPoints(new double[0], new double[0], 0);
+        pointCount = 0;
+        clusters = Collections.emptyList();
+        retainedScene.removeMarkers(CLUSTER_MARKER_ID);
+        renderedZoomLevel = -1;
+    }
+
+    /**
+     * Puts the markers of the current clusters into the retained scene again, e.g. after all
+     * markers were cleared there.
+     */
+    public void putMarkers() {
+        for (GridClusterer.Cluster cluster : clusters) {
+            MapImage image = cluster.count == 1 ? poiImage : getClusterImage(cluster.count);
+            MapMarkerImageStyle imageStyle = cluster.count == 1 ? poiImageStyle : clusterImageStyle;
+            retainedScene.putMarker(markerId(cluster), new GeoCoordinates(cluster.latitude, cluster.longitude),
+                    image, imageStyle);
+        }
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getMarkerCount() {
+        return clusters.size();
+    }
+
+    @Override
+    public void onCameraUpdated(CameraUpdate cameraUpdate) {
+        int zoomLevel = (int) Math.floor(cameraUpdate.zoomLevel);
+        if (zoomLevel != renderedZoomLevel && pointCount > 0) {
+            render(zoomLevel);
+            retainedScene.commitMarkers(CLUSTER_MARKER_ID);
+        }
+    }
+
+    private void render(int zoomLevel) {
+        clusters = clusterer.getClusters(zoomLevel);
+        retainedScene.removeMarkers(CLUSTER_MARKER_ID);
+        putMarkers();
+        renderedZoomLevel = zoomLevel;
+    }
+
+    // The marker of a cluster depends only on its position and its size. Unlike point indices,
+    // these stay the same when an equal set of points is set again.
+    private static String markerId(GridClusterer.Cluster cluster) {
+        return CLUSTER_MARKER_ID + cluster.latitude + "," + cluster.longitude + "," + cluster.count;
+    }
+
+    private MapImage getClusterImage(int count) {
+        MapImage mapImage = clusterImages.get(count);
+        if (mapImage == null) {
+            mapImage = MapImageFactory.fromBitmap(drawClusterBitmap(count));
+            clusterImages.put(count, mapImage);
+        }
+        return mapImage;
+    }
+
+    private static Bitmap drawClusterBitmap(int count) {
+        int size = CLUSTER_IMAGE_SIZE_IN_PIXELS;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        circlePaint.setColor(Color.argb(220, 0, 144, 138));
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, circlePaint);
+
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(size * 0.4f);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        float baseline = size / 2f - (textPaint.descent() + textPaint.ascent()) / 2;
+        canvas.drawText(String.valueOf(count), size / 2f, baseline, textPaint);
+        return bitmap;
+    }
+}
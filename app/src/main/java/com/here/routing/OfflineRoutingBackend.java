@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.here.routing.core.BidirectionalAStar;
+import com.here.routing.core.GraphRouteBuilder;
+import com.here.routing.core.RoadGraph;
+import com.here.routing.core.RouteResult;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Routes on the device with bidirectional A* over a road graph file, without network access.
+ * The graph is loaded on first use. Car options are not evaluated: the graph is expected to
+ * contain the car network with car travel times.
+ */
+public class OfflineRoutingBackend implements RoutingBackend {
+
+    private static final String TAG = OfflineRoutingBackend.class.getName();
+
+    // Waypoints farther than this from any graph node cannot be matched.
+    private static final double MAX_SNAP_DISTANCE_IN_METERS = 500;
+
+    private final File graphFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only accessed on the executor thread.
+    private RoadGraph graph;
+    private BidirectionalAStar search;
+    private boolean loadFailed;
+
+    public OfflineRoutingBackend(File graphFile) {
+        this.graphFile = graphFile;
+    }
+
+    public boolean isAvailable() {
+        return graphFile.isFile();
+    }
+
+    @Override
+    public void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, Callback callback) {
+        List<GeoCoordinates> coordinates = new ArrayList<>(waypoints.size());
+        for (Waypoint waypoint : waypoints) {
+            coordinates.add(waypoint.coordinates);
+        }
+
+        if (executor.isShutdown()) {
+            // Shut down with the activity; nobody waits for the result any more.
+            return;
+        }
+        executor.execute(() -> {
+            RoutingError routingError;
+            List<RouteResult> routes = new ArrayList<>(1);
+            try {
+                routingError = route(coordinates, routes);
+            } catch (RuntimeException e) {
+                // Callers wait for the callback, e.g. to fall back to online routing or to free a
+                // request slot, so every failure must still be reported.
+                Log.e(TAG, "Offline routing failed", e);
+                routingError = RoutingError.INTERNAL_ERROR;
+            }
+            RoutingError finalRoutingError = routingError;
+            List<RouteResult> finalRoutes = routingError == null ? routes : null;
+            mainHandler.post(() -> {
+                if (!executor.isShutdown()) {
+                    callback.onRouteCalculated(finalRoutingError, finalRoutes);
+                }
+            });
+        });
+    }
+
+    // Runs on the executor. Adds the route to routes, or returns why there is none.
+    private RoutingError route(List<GeoCoordinates> coordinates, List<RouteResult> routes) {
+        if (!ensureLoaded()) {
+            return RoutingError.INTERNAL_ERROR;
+        }
+        List<BidirectionalAStar.Path> legs = new ArrayList<>(coordinates.size() - 1);
+        int previousNode = -1;
+        for (int i = 0; i < coordinates.size(); i++) {
+            GeoCoordinates waypoint = coordinates.get(i);
+            int node = graph.nearestNode(waypoint.latitude, waypoint.longitude, MAX_SNAP_DISTANCE_IN_METERS);
+            if (node == -1) {
+                return i == 0 ? RoutingError.COULD_NOT_MATCH_ORIGIN : RoutingError.COULD_NOT_MATCH_DESTINATION;
+            }
+            if (previousNode != -1) {
+                BidirectionalAStar.Path path = search.findPath(previousNode, node);
+                if (path == null) {
+                    return RoutingError.NO_ROUTE_FOUND;
+                }
+                legs.add(path);
+            }
+            previousNode = node;
+        }
+        GeoCoordinates destination = coordinates.get(coordinates.size() - 1);
+        routes.add(GraphRouteBuilder.build(graph, legs, destination.latitude, destination.longitude));
+        return null;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean ensureLoaded() {
+        if (graph != null) {
+            return true;
+        }
+        if (loadFailed) {
+            return false;
+        }
+        try {
+            long start = System.nanoTime();
+            graph = RoadGraph.read(graphFile);
+            search = new BidirectionalAStar(graph);
+            Log.d(TAG, "Loaded road graph with " + graph.getNodeCount() + " nodes and "
+                    + graph.getEdgeCount() + " edges in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Loading road graph failed: " + e);
+            graph = null;
+            search = null;
+            loadFailed = true;
+            return false;
+        }
+    }
+}
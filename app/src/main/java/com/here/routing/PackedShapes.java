@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import com.here.routing.core.PackedShape;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.GeoPolyline;
+import com.here.sdk.core.errors.InstantiationErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts between {@link PackedShape} and the coordinate types of the HERE SDK.
+ */
+public final class PackedShapes {
+
+    private PackedShapes() {
+    }
+
+    public static PackedShape fromGeoCoordinates(List<GeoCoordinates> coordinatesList) {
+        int size = coordinatesList.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            GeoCoordinates coordinates = coordinatesList.get(i);
+            latitudes[i] = coordinates.latitude;
+            longitudes[i] = coordinates.longitude;
+        }
+        return new PackedShape(latitudes, longitudes, size);
+    }
+
+    public static PackedShape fromGeoPolyline(GeoPolyline geoPolyline) {
+        return fromGeoCoordinates(geoPolyline.vertices);
+    }
+
+    public static GeoPolyline toGeoPolyline(PackedShape shape) throws InstantiationErrorException {
+        return toGeoPolyline(shape, 0, shape.size());
+    }
+
+    /**
+     * Converts the vertices from start (inclusive) to end (exclusive).
+     */
+    public static GeoPolyline toGeoPolyline(PackedShape shape, int start, int end)
+            throws InstantiationErrorException {
+        List<GeoCoordinates> vertices = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            vertices.add(new GeoCoordinates(shape.latitude(i), shape.longitude(i)));
+        }
+        return new GeoPolyline(vertices);
+    }
+
+    /**
+     * Converts only the vertices at the given indices, e.g. the result of a simplification.
+     */
+    public static GeoPolyline toGeoPolyline(PackedShape shape, int[] indices)
+            throws InstantiationErrorException {
+        return toGeoPolyline(shape, indices, 0, indices.length);
+    }
+
+    /**
+     * Converts the vertices at indices[start] (inclusive) to indices[end] (exclusive).
+     */
+    public static GeoPolyline toGeoPolyline(PackedShape shape, int[] indices, int start, int end)
+            throws InstantiationErrorException {
+        List<GeoCoordinates> vertices = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            vertices.add(new GeoCoordinates(shape.latitude(indices[i]), shape.longitude(indices[i])));
+        }
+        return new GeoPolyline(vertices);
+    }
+}
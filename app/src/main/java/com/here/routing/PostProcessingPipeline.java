@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the CPU-bound preparation of results on a worker thread and hands the prepared result
+ * to the main thread in one step, where only the map and dialog updates remain to be done.
+ *
+ * A single worker keeps results in the order they were submitted.
+ */
+public final class PostProcessingPipeline {
+
+    private static final String TAG = PostProcessingPipeline.class.getName();
+
+    /**
+     * Runs on the worker thread. Must not touch the map or views.
+     */
+    public interface Preparation<T> {
+        T prepare() throws Exception;
+    }
+
+    /**
+     * Runs on the main thread with the result of the preparation.
+     */
+    public interface MainThreadStep<T> {
+        void apply(T prepared);
+    }
+
+    /**
+     * Runs on the main thread instead of the main thread step if the preparation failed.
+     */
+    public interface ErrorStep {
+        void onError(Exception e);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Does nothing after {@link #shutdown()}; steps that were pending then are dropped.
+     */
+    public <T> void submit(Preparation<T> preparation, MainThreadStep<T> mainThreadStep, ErrorStep errorStep) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            T prepared;
+            try {
+                prepared = preparation.prepare();
+            } catch (Exception e) {
+                Log.e(TAG, "Post-processing failed: " + e);
+                mainHandler.post(() -> {
+                    if (!executor.isShutdown()) {
+                        errorStep.onError(e);
+                    }
+                });
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!executor.isShutdown()) {
+                    mainThreadStep.apply(prepared);
+                }
+            });
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
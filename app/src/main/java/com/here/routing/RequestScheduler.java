@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coordinates the requests sent to the routing and geocoding engines:
+ * <ul>
+ *   <li>At most a fixed number of requests runs at a time; interactive requests start before
+ *       background ones.</li>
+ *   <li>Requests with the same key share one engine call while it is queued or running.</li>
+ *   <li>A request submitted to a slot supersedes the previous request in that slot: the
+ *       callback of the older one is dropped, and if nobody else waits for its result, it
+ *       does not start at all.</li>
+ * </ul>
+ * The engines cannot abort a request that is already running; its result is simply not
+ * delivered to superseded callers.
+ *
+ * Expected to be used from the main thread, on which the engines deliver their callbacks.
+ */
+public final class RequestScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    /**
+     * Sends the engine call. Must call {@link Done#done} once with the result, on the main thread.
+     */
+    public interface Request<T> {
+        void start(Done<T> done);
+    }
+
+    public interface Done<T> {
+        void done(T result);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static final class Subscriber<T> {
+        final Callback<T> callback;
+        @Nullable
+        final String slot;
+        boolean cancelled;
+
+        Subscriber(Callback<T> callback, @Nullable String slot) {
+            this.callback = callback;
+            this.slot = slot;
+        }
+    }
+
+    // One engine call and everybody waiting for its result.
+    private static final class Flight<T> {
+        final String key;
+        final Request<T> request;
+        final List<Subscriber<T>> subscribers = new ArrayList<>(1);
+        Priority priority;
+        boolean started;
+        boolean finished;
+
+        Flight(String key, Request<T> request, Priority priority) {
+            this.key = key;
+            this.request = request;
+            this.priority = priority;
+        }
+
+        boolean isWanted() {
+            for (Subscriber<T> subscriber : subscribers) {
+                if (!subscriber.cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final int maxConcurrentRequests;
+    private final Map<String, Flight<?>> flights = new HashMap<>();
+    private final Map<String, Subscriber<?>> slots = new HashMap<>();
+    private final EnumMap<Priority, ArrayDeque<Flight<?>>> queues = new EnumMap<>(Priority.class);
+    private int running;
+
+    public RequestScheduler(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1: " + maxConcurrentRequests);
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * @param key  requests with equal keys must produce equal results; they share one engine call.
+     * @param slot the request supersedes the previous one in this slot; null for none.
+     */
+    public <T> void submit(String key, @Nullable String slot, Priority priority,
+                           Request<T> request, Callback<T> callback) {
+        Subscriber<T> subscriber = new Subscriber<>(callback, slot);
+        if (slot != null) {
+            Subscriber<?> superseded = slots.put(slot, subscriber);
+            if (superseded != null) {
+                superseded.cancelled = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Flight<T> flight = (Flight<T>) flights.get(key);
+        if (flight == null) {
+            flight = new Flight<>(key, request, priority);
+            flights.put(key, flight);
+            queues.get(priority).add(flight);
+        } else if (!flight.started && priority.compareTo(flight.priority) < 0) {
+            // A queued background request is now awaited interactively.
+            queues.get(flight.priority).remove(flight);
+            flight.priority = priority;
+            queues.get(priority).add(flight);
+        }
+        flight.subscribers.add(subscriber);
+        startQueued();
+    }
+
+    /**
+     * Drops the callback of the request in the slot, e.g. because a cached result was shown instead.
+     */
+    public void cancel(String slot) {
+        Subscriber<?> subscriber = slots.remove(slot);
+        if (subscriber != null) {
+            subscriber.cancelled = true;
+        }
+    }
+
+    /**
+     * Drops all queued requests and all callbacks of running ones.
+     */
+    public void cancelAll() {
+        for (Iterator<Flight<?>> iterator = flights.values().iterator(); iterator.hasNext(); ) {
+            Flight<?> flight = iterator.next();
+            cancelSubscribers(flight);
+            if (!flight.started) {
+                iterator.remove();
+            }
+        }
+        slots.clear();
+        for (ArrayDeque<Flight<?>> queue : queues.values()) {
+            queue.clear();
+        }
+    }
+
+    public int getRunningCount() {
+        return running;
+    }
+
+    public int getQueuedCount() {
+        int queued = 0;
+        for (ArrayDeque<Flight<?>> queue : queues.values()) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    private void startQueued() {
+        while (running < maxConcurrentRequests) {
+            Flight<?> flight = pollQueue();
+            if (flight == null) {
+                return;
+            }
+            if (!flight.isWanted()) {
+                // Every caller was superseded before the request started.
+                flights.remove(flight.key);
+                continue;
+            }
+            start(flight);
+        }
+    }
+
+    @Nullable
+    private Flight<?> pollQueue() {
+        for (Priority priority : Priority.values()) {
+            Flight<?> flight = queues.get(priority).poll();
+            if (flight != null) {
+                return flight;
+            }
+        }
+        return null;
+    }
+
+    private <T> void start(Flight<T> flight) {
+        flight.started = true;
+        running++;
+        flight.request.start(result -> finish(flight, result));
+    }
+
+    private <T> void finish(Flight<T> flight, T result) {
+        if (flight.finished) {
+            return;
+        }
+        flight.finished = true;
+        running--;
+        // Requests submitted from here on start a new engine call.
+        if (flights.get(flight.key) == flight) {
+            flights.remove(flight.key);
+        }
+        for (Subscriber<T> subscriber : flight.subscribers) {
+            if (subscriber.cancelled) {
+                continue;
+            }
+            if (subscriber.slot != null && slots.get(subscriber.slot) == subscriber) {
+                slots.remove(subscriber.slot);
+            }
+            subscriber.callback.onResult(result);
+        }
+        startQueued();
+    }
+
+    private static <T> void cancelSubscribers(Flight<T> flight) {
+        for (Subscriber<T> subscriber : flight.subscribers) {
+            subscriber.cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.GridSpatialIndex;
+import com.here.routing.core.PackedShape;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.core.Metadata;
+import com.here.sdk.mapviewlite.Camera;
+import com.here.sdk.mapviewlite.MapImage;
+import com.here.sdk.mapviewlite.MapMarker;
+import com.here.sdk.mapviewlite.MapMarkerImageStyle;
+import com.here.sdk.mapviewlite.MapPolylineStyle;
+import com.here.sdk.mapviewlite.MapScene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained model of the markers and route polylines on the map. Callers change the desired
+ * state, identified by ids, as often as they like; {@link #commit()} compares it with what is
+ * on the map and applies only the differences in one pass. Items that did not change cost no
+ * scene work, and a marker that only changed its position is moved instead of replaced.
+ *
+ * Expected to be used from the main thread.
+ */
+public class RetainedScene {
+
+    private static final String TAG = RetainedScene.class.getName();
+
+    private static final class MarkerSpec {
+        final GeoCoordinates coordinates;
+        final MapImage image;
+        final MapMarkerImageStyle imageStyle;
+        @Nullable
+        final Metadata metadata;
+
+        MarkerSpec(GeoCoordinates coordinates, MapImage image, MapMarkerImageStyle imageStyle,
+                   @Nullable Metadata metadata) {
+            this.coordinates = coordinates;
+            this.image = image;
+            this.imageStyle = imageStyle;
+            this.metadata = metadata;
+        }
+
+        // Images and styles are shared instances, so identity is the cheap and exact test.
+        boolean looksLike(MarkerSpec other) {
+            return image == other.image && imageStyle == other.imageStyle && metadata == other.metadata;
+        }
+
+        boolean isAt(GeoCoordinates other) {
+            return coordinates.latitude == other.latitude && coordinates.longitude == other.longitude;
+        }
+    }
+
+    private static final class PlacedMarker {
+        MarkerSpec spec;
+        final MapMarker mapMarker;
+
+        PlacedMarker(MarkerSpec spec, MapMarker mapMarker) {
+            this.spec = spec;
+            this.mapMarker = mapMarker;
+        }
+    }
+
+    private static final class RouteSpec {
+        final PackedShape shape;
+        final LodRoutePolyline.Levels levels;
+        final MapPolylineStyle style;
+
+        RouteSpec(PackedShape shape, LodRoutePolyline.Levels levels, MapPolylineStyle style) {
+            this.shape = shape;
+            this.levels = levels;
+            this.style = style;
+        }
+
+        boolean looksLike(RouteSpec other) {
+            return style == other.style && shape.equals(other.shape);
+        }
+    }
+
+    private static final class PlacedRoute {
+        final RouteSpec spec;
+        final LodRoutePolyline polyline;
+
+        PlacedRoute(RouteSpec spec, LodRoutePolyline polyline) {
+            this.spec = spec;
+            this.polyline = polyline;
+        }
+    }
+
+    private final MapScene mapScene;
+    private final Camera camera;
+    private final GridSpatialIndex<MapMarker> markerIndex;
+
+    private final Map<String, MarkerSpec> desiredMarkers = new LinkedHashMap<>();
+    private final Map<String, PlacedMarker> placedMarkers = new HashMap<>();
+    private final Map<String, RouteSpec> desiredRoutes = new LinkedHashMap<>();
+    private final Map<String, PlacedRoute> placedRoutes = new HashMap<>();
+    private int lastCommitChangeCount;
+
+    /**
+     * @param markerIndex placed markers are kept in this index, for picking.
+     */
+    public RetainedScene(MapScene mapScene, Camera camera, GridSpatialIndex<MapMarker> markerIndex) {
+        this.mapScene = mapScene;
+        this.camera = camera;
+        this.markerIndex = markerIndex;
+    }
+
+    public void putMarker(String id, GeoCoordinates coordinates, MapImage image, MapMarkerImageStyle imageStyle) {
+        putMarker(id, coordinates, image, imageStyle, null);
+    }
+
+    public void putMarker(String id, GeoCoordinates coordinates, MapImage image, MapMarkerImageStyle imageStyle,
+                          @Nullable Metadata metadata) {
+        desiredMarkers.put(id, new MarkerSpec(coordinates, image, imageStyle, metadata));
+    }
+
+    public void removeMarker(String id) {
+        desiredMarkers.remove(id);
+    }
+
+    public void removeMarkers(String idPrefix) {
+        for (Iterator<String> iterator = desiredMarkers.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith(idPrefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param levels only used if the shape differs from the one on the map under this id.
+     */
+    public void putRoute(String id, PackedShape shape, LodRoutePolyline.Levels levels, MapPolylineStyle style) {
+        desiredRoutes.put(id, new RouteSpec(shape, levels, style));
+    }
+
+    public void removeRoute(String id) {
+        desiredRoutes.remove(id);
+    }
+
+    public void clearMarkers() {
+        desiredMarkers.clear();
+    }
+
+    public void clear() {
+        desiredMarkers.clear();
+        desiredRoutes.clear();
+    }
+
+    /**
+     * Makes the map show the desired state.
+     */
+    public void commit() {
+        commit(null);
+    }
+
+    /**
+     * Makes the map show the desired state of the markers whose ids start with the prefix. Other
+     * markers and the routes stay as they are on the map, even if their desired state changed.
+     */
+    public void commitMarkers(String idPrefix) {
+        commit(idPrefix);
+    }
+
+    private void commit(@Nullable String markerIdPrefix) {
+        // Work out all changes first, so that the scene is then updated in one go.
+        List<PlacedMarker> removedMarkers = new ArrayList<>();
+        List<PlacedMarker> movedMarkers = new ArrayList<>();
+        List<String> addedMarkerIds = new ArrayList<>();
+        for (Iterator<Map.Entry<String, PlacedMarker>> iterator = placedMarkers.entrySet().iterator();
+             iterator.hasNext(); ) {
+            Map.Entry<String, PlacedMarker> entry = iterator.next();
+            if (markerIdPrefix != null && !entry.getKey().startsWith(markerIdPrefix)) {
+                continue;
+            }
+            PlacedMarker placed = entry.getValue();
+            MarkerSpec desired = desiredMarkers.get(entry.getKey());
+            if (desired == null || !desired.looksLike(placed.spec)) {
+                removedMarkers.add(placed);
+                iterator.remove();
+            } else if (!desired.isAt(placed.spec.coordinates)) {
+                placed.spec = desired;
+                movedMarkers.add(placed);
+            }
+        }
+        for (String id : desiredMarkers.keySet()) {
+            if ((markerIdPrefix == null || id.startsWith(markerIdPrefix)) && !placedMarkers.containsKey(id)) {
+                addedMarkerIds.add(id);
+            }
+        }
+
+        List<PlacedRoute> removedRoutes = new ArrayList<>();
+        List<String> addedRouteIds = new ArrayList<>();
+        for (Iterator<Map.Entry<String, PlacedRoute>> iterator = placedRoutes.entrySet().iterator();
+             markerIdPrefix == null && iterator.hasNext(); ) {
+            Map.Entry<String, PlacedRoute> entry = iterator.next();
+            RouteSpec desired = desiredRoutes.get(entry.getKey());
+            if (desired == null || !desired.looksLike(entry.getValue().spec)) {
+                removedRoutes.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+        for (String id : desiredRoutes.keySet()) {
+            if (markerIdPrefix == null && !placedRoutes.containsKey(id)) {
+                addedRouteIds.add(id);
+            }
+        }
+
+        for (PlacedRoute placed : removedRoutes) {
+            placed.polyline.detach();
+        }
+        for (PlacedMarker placed : removedMarkers) {
+            mapScene.removeMapMarker(placed.mapMarker);
+            markerIndex.remove(placed.mapMarker);
+        }
+        for (PlacedMarker placed : movedMarkers) {
+            GeoCoordinates coordinates = placed.spec.coordinates;
+            placed.mapMarker.setCoordinates(coordinates);
+            markerIndex.remove(placed.mapMarker);
+            markerIndex.insert(placed.mapMarker, coordinates.latitude, coordinates.longitude);
+        }
+        for (String id : addedRouteIds) {
+            RouteSpec spec = desiredRoutes.get(id);
+            LodRoutePolyline polyline = new LodRoutePolyline(mapScene, camera, spec.levels, spec.style);
+            polyline.attach();
+            placedRoutes.put(id, new PlacedRoute(spec, polyline));
+        }
+        for (String id : addedMarkerIds) {
+            MarkerSpec spec = desiredMarkers.get(id);
+            MapMarker mapMarker = new MapMarker(spec.coordinates);
+            mapMarker.addImage(spec.image, spec.imageStyle);
+            if (spec.metadata != null) {
+                mapMarker.setMetadata(spec.metadata);
+            }
+            mapScene.addMapMarker(mapMarker);
+            markerIndex.insert(mapMarker, spec.coordinates.latitude, spec.coordinates.longitude);
+            placedMarkers.put(id, new PlacedMarker(spec, mapMarker));
+        }
+
+        lastCommitChangeCount = addedMarkerIds.size() + removedMarkers.size()
+                + addedRouteIds.size() + removedRoutes.size();
+        Log.d(TAG, "Committed markers +" + addedMarkerIds.size() + " -" + removedMarkers.size()
+                + " ~" + movedMarkers.size() + ", routes +" + addedRouteIds.size() + " -" + removedRoutes.size());
+    }
+
+    public int getMarkerCount() {
+        return placedMarkers.size();
+    }
+
+    public int getRouteCount() {
+        return placedRoutes.size();
+    }
+
+    /**
+     * Returns the number of markers and routes the last commit added to or removed from the map.
+     */
+    public int getLastCommitChangeCount() {
+        return lastCommitChangeCount;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.BoundedLruCache;
+import com.here.routing.core.DiskCache;
+import com.here.routing.core.RouteResult;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cache for calculated routes. Waypoints are snapped to a grid, so that a start position that
+ * moved only a few meters still reuses the route calculated before. Entries expire after a
+ * fixed time, since traffic makes old routes less accurate.
+ */
+public class RouteCache {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+    private static final CarOptions DEFAULT_CAR_OPTIONS = new CarOptions();
+
+    private final BoundedLruCache<Key, List<RouteResult>> cache;
+    private final double gridSizeInDegreesLatitude;
+
+    /**
+     * @param maxVertices       upper bound for the summed number of shape vertices of all cached routes.
+     * @param timeToLiveMillis  time after which a cached route is calculated again.
+     * @param gridSizeInMeters  waypoints closer than this usually share a cache entry.
+     */
+    public RouteCache(long maxVertices, long timeToLiveMillis, double gridSizeInMeters) {
+        this.gridSizeInDegreesLatitude = gridSizeInMeters / METERS_PER_DEGREE_LATITUDE;
+        cache = new BoundedLruCache<>(maxVertices, timeToLiveMillis, (key, routes) -> countVertices(routes));
+    }
+
+    @Nullable
+    public List<RouteResult> get(List<Waypoint> waypoints, CarOptions carOptions) {
+        return cache.get(createKey(waypoints, carOptions));
+    }
+
+    public void put(List<Waypoint> waypoints, CarOptions carOptions, @NonNull List<RouteResult> routes) {
+        cache.put(createKey(waypoints, carOptions), Collections.unmodifiableList(routes));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Key under which the same route is stored in a {@link DiskCache}, or null if the route
+     * should not be persisted. CarOptions have no stable serialized form, so only routes with
+     * default options are persisted.
+     */
+    @Nullable
+    public String persistentKey(List<Waypoint> waypoints, CarOptions carOptions) {
+        if (carOptions != null && !DEFAULT_CAR_OPTIONS.equals(carOptions)) {
+            return null;
+        }
+        int[] cells = createKey(waypoints, carOptions).cells;
+        StringBuilder key = new StringBuilder("route:");
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(cells[i]);
+        }
+        return key.toString();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCache: " + cache;
+    }
+
+    private Key createKey(List<Waypoint> waypoints, CarOptions carOptions) {
+        int[] cells = new int[waypoints.size() * 2];
+        for (int i = 0; i < waypoints.size(); i++) {
+            GeoCoordinates coordinates = waypoints.get(i).coordinates;
+            int latitudeCell = (int) Math.round(coordinates.latitude / gridSizeInDegreesLatitude);
+            // Keep the cells roughly square: a degree of longitude shrinks towards the poles.
+            double cellLatitude = latitudeCell * gridSizeInDegreesLatitude;
+            double gridSizeInDegreesLongitude =
+                    gridSizeInDegreesLatitude / Math.max(Math.cos(Math.toRadians(cellLatitude)), 0.01);
+            cells[2 * i] = latitudeCell;
+            cells[2 * i + 1] = (int) Math.round(coordinates.longitude / gridSizeInDegreesLongitude);
+        }
+        return new Key(cells, carOptions);
+    }
+
+    private static int countVertices(List<RouteResult> routes) {
+        int vertices = 0;
+        for (RouteResult route : routes) {
+            vertices += route.getShape().size();
+        }
+        return Math.max(vertices, 1);
+    }
+
+    private static final class Key {
+        final int[] cells;
+        // The generated SDK types implement value-based equals() and hashCode(). Callers pass
+        // fresh options per request, so the options are not changed after they were stored.
+        @Nullable
+        final CarOptions carOptions;
+        final int hashCode;
+
+        Key(int[] cells, @Nullable CarOptions carOptions) {
+            this.cells = cells;
+            this.carOptions = carOptions;
+            this.hashCode = 31 * Arrays.hashCode(cells) + (carOptions == null ? 0 : carOptions.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode && Arrays.equals(cells, other.cells)
+                    && (carOptions == null ? other.carOptions == null : carOptions.equals(other.carOptions));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
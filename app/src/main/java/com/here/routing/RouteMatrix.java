@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import com.here.routing.core.RouteResult;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Calculates travel times and lengths between every origin and every destination.
+ * Each distinct leg is requested once, with at most a fixed number of requests in flight.
+ *
+ * Expected to be used from the main thread, on which routing backends deliver their callbacks.
+ */
+public class RouteMatrix {
+
+    public static final int ERROR_NONE = 0;
+    // Any other error code is the ordinal of the RoutingError plus ERROR_ROUTING_ERROR_OFFSET.
+    public static final int ERROR_ROUTING_ERROR_OFFSET = 1;
+    public static final int ERROR_NO_ROUTE = -1;
+
+    public interface Callback {
+        void onMatrixCalculated(Result result);
+    }
+
+    /**
+     * Matrix results in row-major order: cell origin * columns + destination.
+     */
+    public static final class Result {
+        public final int rows;
+        public final int columns;
+        public final int[] travelTimesInSeconds;
+        public final int[] lengthsInMeters;
+        public final int[] errorCodes;
+        public final int requestCount;
+
+        Result(int rows, int columns, int requestCount) {
+            this.rows = rows;
+            this.columns = columns;
+            this.requestCount = requestCount;
+            travelTimesInSeconds = new int[rows * columns];
+            lengthsInMeters = new int[rows * columns];
+            errorCodes = new int[rows * columns];
+        }
+
+        public boolean hasError(int origin, int destination) {
+            return errorCodes[origin * columns + destination] != ERROR_NONE;
+        }
+
+        public RoutingError getRoutingError(int origin, int destination) {
+            int errorCode = errorCodes[origin * columns + destination];
+            return errorCode >= ERROR_ROUTING_ERROR_OFFSET
+                    ? RoutingError.values()[errorCode - ERROR_ROUTING_ERROR_OFFSET] : null;
+        }
+    }
+
+    // A distinct leg and the matrix cells that share its result.
+    private static final class Leg {
+        final GeoCoordinates origin;
+        final GeoCoordinates destination;
+        final List<Integer> cells = new ArrayList<>(1);
+
+        Leg(GeoCoordinates origin, GeoCoordinates destination) {
+            this.origin = origin;
+            this.destination = destination;
+        }
+    }
+
+    private final RoutingBackend routingBackend;
+    private final int maxConcurrentRequests;
+    private final boolean symmetric;
+
+    /**
+     * @param symmetric if true, A to B and B to A are assumed to cost the same and are
+     *                  requested only once. Road networks are rarely exactly symmetric, so
+     *                  this trades some accuracy for fewer requests.
+     */
+    public RouteMatrix(RoutingBackend routingBackend, int maxConcurrentRequests, boolean symmetric) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1: " + maxConcurrentRequests);
+        }
+        this.routingBackend = routingBackend;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.symmetric = symmetric;
+    }
+
+    public void calculate(List<GeoCoordinates> origins, List<GeoCoordinates> destinations,
+                          CarOptions carOptions, Callback callback) {
+        int columns = destinations.size();
+        Map<String, Leg> legsByKey = new HashMap<>();
+        List<Leg> legs = new ArrayList<>();
+
+        for (int row = 0; row < origins.size(); row++) {
+            for (int column = 0; column < columns; column++) {
+                GeoCoordinates origin = origins.get(row);
+                GeoCoordinates destination = destinations.get(column);
+                int cell = row * columns + column;
+                if (sameLocation(origin, destination)) {
+                    // Nothing to request: the cell keeps zero time and length.
+                    continue;
+                }
+
+                String key = legKey(origin, destination);
+                Leg leg = legsByKey.get(key);
+                if (leg == null) {
+                    leg = new Leg(origin, destination);
+                    legsByKey.put(key, leg);
+                    if (symmetric) {
+                        legsByKey.put(legKey(destination, origin), leg);
+                    }
+                    legs.add(leg);
+                }
+                leg.cells.add(cell);
+            }
+        }
+
+        Result result = new Result(origins.size(), columns, legs.size());
+        new Run(legs, carOptions, result, callback).start();
+    }
+
+    // State of one matrix calculation.
+    private final class Run {
+        private final Queue<Leg> pending;
+        private final CarOptions carOptions;
+        private final Result result;
+        private final Callback callback;
+        private int inFlight;
+
+        Run(List<Leg> legs, CarOptions carOptions, Result result, Callback callback) {
+            this.pending = new ArrayDeque<>(legs);
+            this.carOptions = carOptions;
+            this.result = result;
+            this.callback = callback;
+        }
+
+        void start() {
+            if (pending.isEmpty()) {
+                callback.onMatrixCalculated(result);
+                return;
+            }
+            while (inFlight < maxConcurrentRequests && !pending.isEmpty()) {
+                request(pending.poll());
+            }
+        }
+
+        private void request(Leg leg) {
+            inFlight++;
+            List<Waypoint> waypoints = Arrays.asList(new Waypoint(leg.origin), new Waypoint(leg.destination));
+            routingBackend.calculateRoute(waypoints, carOptions, (routingError, routes) -> {
+                inFlight--;
+                store(leg, routingError, routes);
+                if (!pending.isEmpty()) {
+                    request(pending.poll());
+                } else if (inFlight == 0) {
+                    callback.onMatrixCalculated(result);
+                }
+            });
+        }
+
+        private void store(Leg leg, RoutingError routingError, List<RouteResult> routes) {
+            int travelTime = 0;
+            int length = 0;
+            int errorCode;
+            if (routingError != null) {
+                errorCode = routingError.ordinal() + ERROR_ROUTING_ERROR_OFFSET;
+            } else if (routes == null || routes.isEmpty()) {
+                errorCode = ERROR_NO_ROUTE;
+            } else {
+                errorCode = ERROR_NONE;
+                travelTime = routes.get(0).getTravelTimeInSeconds();
+                length = routes.get(0).getLengthInMeters();
+            }
+            for (int cell : leg.cells) {
+                result.travelTimesInSeconds[cell] = travelTime;
+                result.lengthsInMeters[cell] = length;
+                result.errorCodes[cell] = errorCode;
+            }
+        }
+    }
+
+    private static boolean sameLocation(GeoCoordinates a, GeoCoordinates b) {
+        return a.latitude == b.latitude && a.longitude == b.longitude;
+    }
+
+    private static String legKey(GeoCoordinates origin, GeoCoordinates destination) {
+        return origin.latitude + "," + origin.longitude + ";" + destination.latitude + "," + destination.longitude;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.BoundedLruCache;
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.RouteResult;
+import com.here.sdk.core.GeoCoordinates;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Calculates routes to the best geocoding candidates before the user picks one, so that the
+ * pick shows its route without waiting. At most a fixed number of requests is in flight, each
+ * in its own slot, and a new prefetch cancels the previous one: its pending requests are
+ * dropped and its slots are cancelled, so queued requests do not start at all.
+ *
+ * Expected to be used from the main thread, on which routing backends deliver their callbacks.
+ */
+public class RoutePrefetcher {
+
+    /**
+     * Calculates routes in named slots. A request supersedes the previous one in its slot.
+     */
+    public interface SlotRouting {
+        void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, String slot,
+                            RoutingBackend.Callback callback);
+
+        /**
+         * Drops the request in the slot; its callback is not called.
+         */
+        void cancel(String slot);
+    }
+
+    private static final String SLOT = "prefetch:";
+
+    private static final class Entry {
+        final GeoCoordinates start;
+        final RouteResult route;
+
+        Entry(GeoCoordinates start, RouteResult route) {
+            this.start = start;
+            this.route = route;
+        }
+    }
+
+    private final SlotRouting routing;
+    private final int maxConcurrentRequests;
+    private final double maxStartOffsetInMeters;
+    private final BoundedLruCache<String, Entry> routes;
+
+    // Incremented for every prefetch and cancel, so that stale callbacks can be recognized.
+    private long generation;
+    private final Queue<GeoCoordinates> pending = new ArrayDeque<>();
+    private GeoCoordinates pendingStart;
+    private CarOptions pendingCarOptions;
+
+    /**
+     * @param maxCachedRoutes        number of prefetched routes kept.
+     * @param timeToLiveMillis       time after which a prefetched route is no longer used.
+     * @param maxStartOffsetInMeters a prefetched route is only used if the start moved less than this.
+     */
+    public RoutePrefetcher(SlotRouting routing, int maxConcurrentRequests, int maxCachedRoutes,
+                           long timeToLiveMillis, double maxStartOffsetInMeters) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1: " + maxConcurrentRequests);
+        }
+        this.routing = routing;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxStartOffsetInMeters = maxStartOffsetInMeters;
+        routes = new BoundedLruCache<>(maxCachedRoutes, timeToLiveMillis, (key, entry) -> 1);
+    }
+
+    /**
+     * Cancels the previous prefetch and calculates routes from start to each destination that
+     * has no prefetched route yet, in the given order.
+     */
+    public void prefetch(GeoCoordinates start, List<GeoCoordinates> destinations, CarOptions carOptions) {
+        cancel();
+        pendingStart = start;
+        pendingCarOptions = carOptions;
+        for (GeoCoordinates destination : destinations) {
+            if (get(start, destination) == null) {
+                pending.add(destination);
+            }
+        }
+        // Each slot runs one request at a time and takes the next pending one when it is done.
+        for (int slot = 0; slot < maxConcurrentRequests && !pending.isEmpty(); slot++) {
+            request(pending.poll(), slot);
+        }
+    }
+
+    /**
+     * Drops pending requests and the results of requests still in flight, e.g. when a new
+     * search starts. Routes prefetched before are kept.
+     */
+    public void cancel() {
+        generation++;
+        pending.clear();
+        for (int slot = 0; slot < maxConcurrentRequests; slot++) {
+            routing.cancel(SLOT + slot);
+        }
+    }
+
+    /**
+     * @return the prefetched route to destination, or null if there is none for a start this close.
+     */
+    @Nullable
+    public RouteResult get(GeoCoordinates start, GeoCoordinates destination) {
+        Entry entry = routes.get(key(destination));
+        if (entry == null || PackedShape.distanceInMeters(entry.start.latitude, entry.start.longitude,
+                start.latitude, start.longitude) > maxStartOffsetInMeters) {
+            return null;
+        }
+        return entry.route;
+    }
+
+    public void clear() {
+        cancel();
+        routes.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "RoutePrefetcher: " + routes;
+    }
+
+    private void request(GeoCoordinates destination, int slot) {
+        long requestGeneration = generation;
+        GeoCoordinates start = pendingStart;
+        List<Waypoint> waypoints = Arrays.asList(new Waypoint(start), new Waypoint(destination));
+        routing.calculateRoute(waypoints, pendingCarOptions, SLOT + slot, (routingError, result) -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            if (routingError == null && result != null && !result.isEmpty()) {
+                routes.put(key(destination), new Entry(start, result.get(0)));
+            }
+            if (!pending.isEmpty()) {
+                request(pending.poll(), slot);
+            }
+        });
+    }
+
+    // Candidates are identified by their exact coordinates, which their markers carry too.
+    private static String key(GeoCoordinates destination) {
+        return destination.latitude + "," + destination.longitude;
+    }
+}
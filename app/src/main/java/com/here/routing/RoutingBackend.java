@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.RouteResult;
+import com.here.sdk.routing.RoutingEngine.CarOptions;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.routing.Waypoint;
+
+import java.util.List;
+
+/**
+ * Calculates routes for RoutingExample, independent of where the calculation happens.
+ * Callbacks are delivered on the main thread.
+ */
+public interface RoutingBackend {
+
+    interface Callback {
+        void onRouteCalculated(@Nullable RoutingError routingError, @Nullable List<RouteResult> routes);
+    }
+
+    void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, Callback callback);
+}
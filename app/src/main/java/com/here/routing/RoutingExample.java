@@ -20,6 +20,8 @@
 package com.here.routing;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
@@ -27,28 +29,32 @@ import android.util.Log;
 import android.widget.Toast;
 
 
+import com.here.routing.core.AddressIndex;
+import com.here.routing.core.AddressIndexBuilder;
+import com.here.routing.core.CacheCodec;
+import com.here.routing.core.FlexiblePolyline;
+import com.here.routing.core.GeocodedAddress;
+import com.here.routing.core.GridSpatialIndex;
+import com.here.routing.core.OffRouteDetector;
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.PolylineSimplifier;
+import com.here.routing.core.RandomCoordinates;
+import com.here.routing.core.RouteFormatter;
+import com.here.routing.core.RouteCorridor;
+import com.here.routing.core.RouteManeuver;
+import com.here.routing.core.RouteMatcher;
+import com.here.routing.core.RouteResult;
+import com.here.routing.core.StopOrderOptimizer;
 import com.here.sdk.core.CustomMetadataValue;
 import com.here.sdk.core.GeoBox;
 import com.here.sdk.core.GeoCoordinates;
-import com.here.sdk.core.GeoPolyline;
 import com.here.sdk.core.Point2D;
-import com.here.sdk.core.errors.InstantiationErrorException;
 import com.here.sdk.mapviewlite.Camera;
-import com.here.sdk.mapviewlite.MapImage;
-import com.here.sdk.mapviewlite.MapImageFactory;
 import com.here.sdk.mapviewlite.MapMarker;
 import com.here.sdk.mapviewlite.MapMarkerImageStyle;
-import com.here.sdk.mapviewlite.MapPolyline;
 import com.here.sdk.mapviewlite.MapPolylineStyle;
 import com.here.sdk.mapviewlite.MapViewLite;
-import com.here.sdk.mapviewlite.PickMapItemsCallback;
-import com.here.sdk.mapviewlite.PickMapItemsResult;
 import com.here.sdk.mapviewlite.PixelFormat;
-import com.here.sdk.routing.CalculateRouteCallback;
-import com.here.sdk.routing.Maneuver;
-import com.here.sdk.routing.ManeuverAction;
-import com.here.sdk.routing.Route;
-import com.here.sdk.routing.RouteLeg;
 import com.here.sdk.routing.RoutingEngine;
 import com.here.sdk.routing.RoutingEngine.CarOptions;
 import com.here.sdk.routing.RoutingError;
@@ -66,58 +72,270 @@ import com.here.sdk.searchcommon.Address;
 import com.here.sdk.core.Metadata;
 import com.here.sdk.core.Anchor2D;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 
 public class RoutingExample {
 
     private static final String TAG = RoutingExample.class.getName();
 
+    private static final long GEOCODING_CACHE_SIZE_IN_BYTES = 256 * 1024;
+    private static final double GEOCODING_CACHE_GRID_SIZE_IN_DEGREES = 0.001;   //~100 m
+    private static final long ROUTE_CACHE_MAX_VERTICES = 200_000;
+    private static final long ROUTE_CACHE_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000;
+    private static final double ROUTE_CACHE_GRID_SIZE_IN_METERS = 25;
+    private static final double MARKER_INDEX_CELL_SIZE_IN_DEGREES = 0.002;
+    private static final double PICK_RADIUS_IN_PIXELS = 24;
+    private static final long WAYPOINT_ORDER_TIME_BUDGET_MILLIS = 50;
+    private static final int ROUTE_MATRIX_MAX_CONCURRENT_REQUESTS = 4;
+    private static final String ROAD_GRAPH_FILE_NAME = "road_graph.bin";
+    private static final double MAX_OFFLINE_TRIP_LENGTH_IN_METERS = 20_000;
+    private static final String ADDRESS_INDEX_FILE_NAME = "address_index.bin";
+    private static final String DISK_CACHE_FILE_NAME = "routing_cache.bin";
+    private static final long DISK_CACHE_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    // Persisted routes outlive the in-memory cache, but traffic makes day-old routes inaccurate.
+    private static final long DISK_CACHE_ROUTE_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long TYPE_AHEAD_DEBOUNCE_MILLIS = 300;
+    private static final long TYPE_AHEAD_MAX_RESULT_COUNT = 10;
+    private static final int TYPE_AHEAD_MIN_QUERY_LENGTH = 3;
+    // Covers the off-route threshold plus the largest accuracy allowance of the detector.
+    private static final double ROUTE_MATCH_SEARCH_RADIUS_IN_METERS = 100;
+    private static final int PREFETCH_ROUTE_COUNT = 5;
+    private static final int PREFETCH_MAX_CONCURRENT_REQUESTS = 2;
+    private static final double PREFETCH_MAX_START_OFFSET_IN_METERS = 100;
+    private static final double OFF_ROUTE_THRESHOLD_IN_METERS = 50;
+    private static final int MAX_CONCURRENT_ENGINE_REQUESTS = 4;
+    // Request slots: a newer request in a slot drops the callback of the older one.
+    private static final String ROUTE_SLOT = "route";
+    private static final String SEARCH_SLOT = "search";
+    // Followed by the tile index.
+    private static final String CORRIDOR_SLOT = "corridor:";
+    private static final int MAX_CAR_OPTIONS_IDS = 64;
+    private static final int BATCH_GEOCODING_PARALLELISM = 4;
+    private static final int BATCH_GEOCODING_MAX_ATTEMPTS = 4;
+    private static final long BATCH_GEOCODING_INITIAL_BACKOFF_MILLIS = 500;
+    private static final long BATCH_GEOCODING_MAX_BACKOFF_MILLIS = 8000;
+    // Batch addresses are searched in this many degrees around the map center, in every direction.
+    private static final double BATCH_GEOCODING_AREA_IN_DEGREES = 0.25;
+    private static final long BATCH_MARKER_INTERVAL_MILLIS = 250;
+    private static final double CORRIDOR_WIDTH_IN_METERS = 500;
+    private static final double CORRIDOR_MIN_TILE_SIZE_IN_METERS = 2000;
+    // Tiles grow with the route length, so that long routes need about this many searches.
+    private static final int CORRIDOR_TARGET_TILE_COUNT = 20;
+    // Winding routes touch more tiles; beyond this many, the tiles grow instead.
+    private static final int CORRIDOR_MAX_TILE_COUNT = 40;
+    private static final long CORRIDOR_MAX_RESULTS_PER_TILE = 20;
+    private static final int CORRIDOR_MAX_SHOWN_RESULTS = 20;
+    // About 1 m, as precise as the shapes the routing engine returns are useful.
+    private static final int SHARED_SHAPE_PRECISION = 5;
+    private static final String ROUTE_ID = "route";
+    private static final String START_MARKER_ID = "start";
+    private static final String DESTINATION_MARKER_ID = "destination";
+    private static final String WAYPOINT_MARKER_ID = "waypoint:";
+    private static final String SUGGESTION_MARKER_ID = "suggestion:";
+    private static final String BATCH_MARKER_ID = "batch:";
+    private static final String CORRIDOR_MARKER_ID = "corridor:";
+    private static final int OFF_ROUTE_MIN_FIXES = 3;
+    private static final long OFF_ROUTE_MIN_DURATION_MILLIS = 5000;
+    private static final long REROUTE_MIN_INTERVAL_MILLIS = 30_000;
+
     private Context context;
     private MapViewLite mapView;
-    private final List<MapMarker> mapMarkerList = new ArrayList<>();
-    private final List<MapPolyline> mapPolylines = new ArrayList<>();
+    // All markers on the map, so that taps can be resolved without asking the map view.
+    private final GridSpatialIndex<MapMarker> markerIndex =
+            new GridSpatialIndex<>(MARKER_INDEX_CELL_SIZE_IN_DEGREES);
+    // Markers and route polylines shown by this class; changes are applied by diffing.
+    private final RetainedScene retainedScene;
+    private final MapPolylineStyle routePolylineStyle = createRoutePolylineStyle();
+    // Shape of the route shown last, kept in packed form for post-processing.
+    private PackedShape activeRouteShape;
+    private RouteMatcher routeMatcher;
+    private int lastMatchedSegment = -1;
+    private final OffRouteDetector offRouteDetector = new OffRouteDetector(OFF_ROUTE_THRESHOLD_IN_METERS,
+            OFF_ROUTE_MIN_FIXES, OFF_ROUTE_MIN_DURATION_MILLIS, REROUTE_MIN_INTERVAL_MILLIS);
+    private boolean trackingEnabled = true;
+    @Nullable
+    private Runnable routeShownListener;
+    private final MapImageCache mapImageCache;
+    private final MapMarkerImageStyle poiImageStyle = MapImageCache.createImageStyle(new Anchor2D(0.5F, 1));
+    private final MapMarkerImageStyle circleImageStyle = MapImageCache.createImageStyle(null);
+    private final MarkerClusterLayer markerClusterLayer;
     private RoutingEngine routingEngine;
+    private RoutingBackend routingBackend;
+    private final HereRoutingBackend hereRoutingBackend;
+    private final OfflineRoutingBackend offlineRoutingBackend;
+    private RouteMatrix routeMatrix;
+    private RoutePrefetcher routePrefetcher;
+    private final RequestScheduler requestScheduler = new RequestScheduler(MAX_CONCURRENT_ENGINE_REQUESTS);
+    // Numbers for the car options in route request keys, see carOptionsId().
+    private final Map<CarOptions, Integer> carOptionsIds = new HashMap<>();
+    private int lastCarOptionsId;
+    private final BatchGeocoder batchGeocoder = new BatchGeocoder(this::geocodeForBatch,
+            BATCH_GEOCODING_PARALLELISM, BATCH_GEOCODING_MAX_ATTEMPTS,
+            BATCH_GEOCODING_INITIAL_BACKOFF_MILLIS, BATCH_GEOCODING_MAX_BACKOFF_MILLIS);
+    private GeoBox batchGeocodingArea;
+    // Batch results waiting to be added to the map, by input index.
+    private final Map<Integer, GeoCoordinates> pendingBatchMarkers = new LinkedHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable batchMarkerFlush = this::flushBatchMarkers;
+    private boolean batchMarkerFlushScheduled;
+    // Incremented for every search along the route, so that results of older ones are dropped.
+    private int corridorSearchGeneration;
+    private final RouteCache routeCache = new RouteCache(
+            ROUTE_CACHE_MAX_VERTICES, ROUTE_CACHE_TIME_TO_LIVE_MILLIS, ROUTE_CACHE_GRID_SIZE_IN_METERS);
     private GeoCoordinates startGeoCoordinates;         //This is where you start
     private GeoCoordinates destinationGeoCoordinates;   //This is where you want to go
     private GeocodingEngine geocodingEngine;
+    private final GeocodingCache geocodingCache =
+            new GeocodingCache(GEOCODING_CACHE_SIZE_IN_BYTES, GEOCODING_CACHE_GRID_SIZE_IN_DEGREES);
+    private TypeAheadGeocoder typeAheadGeocoder;
+    // Addresses of the service area on the device, or null if no index has been installed.
+    @Nullable
+    private AddressIndex addressIndex;
+    // Routes and geocoding results of earlier sessions, shared with other instances in the process.
+    private final SharedDiskCache diskCache;
+    private final RoutingMetrics metrics = new RoutingMetrics();
+    private final PostProcessingPipeline postProcessing = new PostProcessingPipeline();
+    // Incremented whenever the route is cleared, so that results prepared for an older scene are dropped.
+    private int sceneGeneration;
+    // Set while the results of a search that repeats the previous one from the same location are
+    // shown; such a search must not add or remove anything on the map.
+    @Nullable
+    private String lastSearchKey;
+    private boolean repeatedSearch;
     private Camera camera;
     public GeoCoordinates lastKnownLocation;
 
     public GeoCoordinates destCoordinates;
 
+    private final RandomCoordinates randomCoordinates = new RandomCoordinates(new Random());
+    private boolean optimizeWaypointOrder = true;
+    private int intermediateWaypointCount = 2;
+
     public String finalLocation;
 
 
 
 
 
-    public RoutingExample(Context context, MapViewLite mapView) {
+    /**
+     * The engines are created by the caller, off the main thread while the map scene loads.
+     */
+    public RoutingExample(Context context, MapViewLite mapView,
+                          RoutingEngine routingEngine, GeocodingEngine geocodingEngine) {
         this.context = context;
         this.mapView = mapView;
+        mapImageCache = new MapImageCache(context.getResources());
         camera = mapView.getCamera();
         camera.setTarget(new GeoCoordinates(41.871657, -87.647428));  //this coordinate = Jane Addams Hull House Museum
         camera.setZoomLevel(14);
+        retainedScene = new RetainedScene(mapView.getMapScene(), camera, markerIndex);
+        markerClusterLayer = new MarkerClusterLayer(retainedScene, camera,
+                mapImageCache.getMapImage(R.drawable.poi), poiImageStyle);
+
+        this.routingEngine = routingEngine;
+        this.geocodingEngine = geocodingEngine;
+
+        typeAheadGeocoder = new TypeAheadGeocoder(geocodingEngine, requestScheduler, geocodingCache,
+                LanguageCode.EN_US, TYPE_AHEAD_MAX_RESULT_COUNT,
+                TYPE_AHEAD_DEBOUNCE_MILLIS, TYPE_AHEAD_MIN_QUERY_LENGTH,
+                (query, suggestions) -> showSuggestions(suggestions));
+
+        // Short trips are routed on the device when a road graph has been installed.
+        offlineRoutingBackend =
+                new OfflineRoutingBackend(new File(context.getFilesDir(), ROAD_GRAPH_FILE_NAME));
+        hereRoutingBackend = new HereRoutingBackend(routingEngine);
+        routingBackend = new HybridRoutingBackend(hereRoutingBackend,
+                offlineRoutingBackend, MAX_OFFLINE_TRIP_LENGTH_IN_METERS);
+
+        // Matrix legs and prefetches go through the route caches and the scheduler like any
+        // other route, but give way to requests the user waits for.
+        RoutingBackend backgroundRouting = (waypoints, carOptions, callback) ->
+                calculateRoute(waypoints, carOptions, null, RequestScheduler.Priority.BACKGROUND, callback);
+        routeMatrix = new RouteMatrix(backgroundRouting, ROUTE_MATRIX_MAX_CONCURRENT_REQUESTS, false);
+        RoutePrefetcher.SlotRouting prefetchRouting = new RoutePrefetcher.SlotRouting() {
+            @Override
+            public void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, String slot,
+                                       RoutingBackend.Callback callback) {
+                RoutingExample.this.calculateRoute(waypoints, carOptions, slot,
+                        RequestScheduler.Priority.BACKGROUND, callback);
+            }
 
-        try {
-            routingEngine = new RoutingEngine();
-        } catch (InstantiationErrorException e) {
-            new RuntimeException("Initialization of RoutingEngine failed: " + e.error.name());
-        }
+            @Override
+            public void cancel(String slot) {
+                requestScheduler.cancel(slot);
+            }
+        };
+        routePrefetcher = new RoutePrefetcher(prefetchRouting, PREFETCH_MAX_CONCURRENT_REQUESTS,
+                PREFETCH_ROUTE_COUNT, ROUTE_CACHE_TIME_TO_LIVE_MILLIS, PREFETCH_MAX_START_OFFSET_IN_METERS);
 
-        try {
-            geocodingEngine = new GeocodingEngine();
-        } catch (InstantiationErrorException e) {
-            new RuntimeException("Initialization of GeocodingEngine failed: " + e.error.name());
-        }
+        addressIndex = openAddressIndex(new File(context.getFilesDir(), ADDRESS_INDEX_FILE_NAME));
+        diskCache = SharedDiskCache.getInstance(
+                new File(context.getCacheDir(), DISK_CACHE_FILE_NAME), DISK_CACHE_SIZE_IN_BYTES);
 
         setTapGestureHandler();
 
 
     }
 
+    @Nullable
+    private static AddressIndex openAddressIndex(File indexFile) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            // Only maps the file; nothing is read until the first search.
+            return AddressIndex.open(indexFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Address index could not be opened: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Forces pending cache writes to disk and logs the request metrics. Call when the activity
+     * is paused, as the process may be killed afterwards.
+     */
+    public void onPause() {
+        Log.d(TAG, metrics.snapshot().toString());
+        diskCache.sync();
+    }
+
+    public void onDestroy() {
+        markerClusterLayer.detach();
+        typeAheadGeocoder.cancel();
+        routePrefetcher.cancel();
+        batchGeocoder.cancel();
+        mainHandler.removeCallbacks(batchMarkerFlush);
+        requestScheduler.cancelAll();
+        // The disk cache stays open for the next instance, e.g. after a rotation.
+        diskCache.sync();
+        hereRoutingBackend.shutdown();
+        offlineRoutingBackend.shutdown();
+        if (addressIndex != null) {
+            try {
+                addressIndex.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Address index close failed: " + e.getMessage());
+            }
+            addressIndex = null;
+        }
+        postProcessing.shutdown();
+    }
+
     public void getFinalLocation(String s) {
         finalLocation = s;
     }
@@ -127,7 +345,29 @@ public class RoutingExample {
         geocodeAnAddress();
     }
 
+    // Shows suggestions while the user is still typing. Nothing is routed until the query is submitted.
+    public void onQueryTextChanged(String newText) {
+        typeAheadGeocoder.onQueryChanged(newText, mapView.getCamera().getBoundingRect());
+    }
+
+    private void showSuggestions(List<GeocodingResult> suggestions) {
+        clearWaypointMapMarker();
+        markerClusterLayer.clear();
+        List<GeoCoordinates> suggestionCoordinates = new ArrayList<>(suggestions.size());
+        for (GeocodingResult suggestion : suggestions) {
+            if (suggestion.address != null) {
+                Log.d(TAG, "Suggestion: " + suggestion.address.addressText);
+                suggestionCoordinates.add(suggestion.coordinates);
+            }
+        }
+        addPoiMapMarkers(SUGGESTION_MARKER_ID, suggestionCoordinates);
+        retainedScene.commit();
+    }
+
     public void geocodeAnAddress() {
+        // A submitted query supersedes any suggestion still on its way.
+        typeAheadGeocoder.cancel();
+
         // Set map to expected location.
         //camera.setTarget(new GeoCoordinates(41.871657, -87.647428));        //this coordinate = Jane Addams Hull House Museum
 
@@ -140,92 +380,573 @@ public class RoutingExample {
     }
 
     private void geocodeAddressInViewport(String queryString) {
-        clearMap();
+        long issueStartNanos = System.nanoTime();
+        // The previous results stay on the map until the new ones are shown. Markers and the
+        // route that come back unchanged then cost no scene work.
+        clearWaypointMapMarker();
+        clearRoute();
+        // Results of previous searches and routes to their candidates are no longer wanted.
+        requestScheduler.cancel(SEARCH_SLOT);
+        routePrefetcher.cancel();
 
         GeoBox geoBox = mapView.getCamera().getBoundingRect();
+        LanguageCode languageCode = LanguageCode.EN_US;
         long maxResultCount = 30;
-        GeocodingOptions geocodingOptions = new GeocodingOptions(
-                LanguageCode.EN_US, maxResultCount);
-
+        String persistentKey = geocodingCache.persistentKey(geoBox, queryString, languageCode, maxResultCount);
+        String searchKey = lastKnownLocation == null ? persistentKey
+                : persistentKey + '@' + lastKnownLocation.latitude + ',' + lastKnownLocation.longitude;
+        repeatedSearch = searchKey.equals(lastSearchKey);
+        lastSearchKey = searchKey;
+
+        // Repeated searches for the same query in (nearly) the same viewport are answered from the cache.
+        List<GeocodingResult> cachedResults =
+                geocodingCache.get(geoBox, queryString, languageCode, maxResultCount);
+        if (cachedResults != null) {
+            Log.d(TAG, "Geocoding cache hit. " + geocodingCache);
+            showGeocodingResults(cachedResults);
+            return;
+        }
+        List<GeocodedAddress> cachedAddresses =
+                geocodingCache.getAddresses(geoBox, queryString, languageCode, maxResultCount);
+        if (cachedAddresses != null) {
+            Log.d(TAG, "Geocoding cache hit for persisted addresses. " + geocodingCache);
+            showGeocodedAddresses(cachedAddresses);
+            return;
+        }
 
         //Geocode an address to a location
         //This let's you search raw coordinates and other location details by passing an
         // address in detail such as a street name or city
+        metrics.geocodeIssue.recordSince(issueStartNanos);
+        requestScheduler.submit(persistentKey, SEARCH_SLOT, RequestScheduler.Priority.INTERACTIVE,
+                (RequestScheduler.Done<GeocodingResponse> done) ->
+                        // Results of earlier sessions are stored on disk. The lookup is part of the
+                        // request, so that a newer search drops it like an engine call.
+                        diskCache.get(persistentKey, Long.MAX_VALUE, CacheCodec::decodeAddresses,
+                                persistedAddresses -> {
+                                    if (persistedAddresses != null) {
+                                        geocodingCache.putAddresses(geoBox, queryString, languageCode,
+                                                maxResultCount, persistedAddresses);
+                                        done.done(GeocodingResponse.ofAddresses(persistedAddresses));
+                                        return;
+                                    }
+                                    // Addresses in the local index resolve without a network round trip.
+                                    List<GeocodedAddress> localResults =
+                                            searchAddressIndex(geoBox, queryString, maxResultCount);
+                                    if (!localResults.isEmpty()) {
+                                        Log.d(TAG, "Address index hit: " + localResults.size() + " results.");
+                                        done.done(GeocodingResponse.ofAddresses(localResults));
+                                        return;
+                                    }
+                                    searchLocations(geoBox, queryString, languageCode, maxResultCount,
+                                            persistentKey, done);
+                                }),
+                response -> {
+                    if (response.addresses != null) {
+                        showGeocodedAddresses(response.addresses);
+                        return;
+                    }
+                    if (response.searchError != null) {
+                        // The local index already came up empty, so there is nothing to fall back to.
+                        clearMap();
+                        showDialog("Geocoding", "Error: " + response.searchError.toString());
+                        return;
+                    }
+                    showGeocodingResults(response.results);
+                });
+
+    }
+
+    private void searchLocations(GeoBox geoBox, String queryString, LanguageCode languageCode,
+                                 long maxResultCount, String persistentKey,
+                                 RequestScheduler.Done<GeocodingResponse> done) {
+        GeocodingOptions geocodingOptions = new GeocodingOptions(
+                languageCode, maxResultCount);
+        long engineStartNanos = System.nanoTime();
         geocodingEngine.searchLocations(geoBox, queryString, geocodingOptions, new GeocodingCallback() {
             @Override
             public void onSearchCompleted(@Nullable SearchError searchError,
                                           @Nullable List<GeocodingResult> list) {
+                metrics.geocodeEngine.recordSince(engineStartNanos);
                 if (searchError != null) {
-                    showDialog("Geocoding", "Error: " + searchError.toString());
-                    return;
+                    metrics.searchErrors.increment(searchError);
+                } else {
+                    // Empty results are cached too, so that a repeated search for an
+                    // unknown address does not cost another round trip.
+                    geocodingCache.put(geoBox, queryString, languageCode, maxResultCount, list);
+                    diskCache.put(persistentKey,
+                            () -> CacheCodec.encodeAddresses(toGeocodedAddresses(list)));
                 }
+                done.done(new GeocodingResponse(searchError, list));
+            }
+        });
+    }
 
-                if (list.isEmpty()) {
-                    showDialog("Geocoding", "No geocoding results found.");
-                    return;
+    /**
+     * Geocodes the addresses in the first column of a CSV file, e.g. the delivery addresses of a
+     * day, and adds them to the map as they arrive. A header row starting with "address" is skipped.
+     *
+     * @param listener also receives every result, and is told when the batch is done; may be null.
+     */
+    public void geocodeAddressCsv(File csvFile, @Nullable BatchGeocoder.Listener listener) {
+        postProcessing.submit(() -> readCsvAddresses(csvFile),
+                addresses -> geocodeAddresses(addresses.iterator(), listener),
+                e -> {
+                    Toast.makeText(context, "Could not read " + csvFile.getName() + ": " + e.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                    if (listener != null) {
+                        listener.onFinished(0, 0);
+                    }
+                });
+    }
+
+    /**
+     * Geocodes the addresses near the current map area, a few at a time, and adds them to the
+     * map as they arrive. Cancels a batch that is still running.
+     */
+    public void geocodeAddresses(Iterator<String> addresses, @Nullable BatchGeocoder.Listener listener) {
+        GeoBox viewport = camera.getBoundingRect();
+        double centerLatitude = (viewport.southWestCorner.latitude + viewport.northEastCorner.latitude) / 2;
+        double centerLongitude = (viewport.southWestCorner.longitude + viewport.northEastCorner.longitude) / 2;
+        batchGeocodingArea = new GeoBox(
+                new GeoCoordinates(centerLatitude - BATCH_GEOCODING_AREA_IN_DEGREES,
+                        centerLongitude - BATCH_GEOCODING_AREA_IN_DEGREES),
+                new GeoCoordinates(centerLatitude + BATCH_GEOCODING_AREA_IN_DEGREES,
+                        centerLongitude + BATCH_GEOCODING_AREA_IN_DEGREES));
+        retainedScene.removeMarkers(BATCH_MARKER_ID);
+        pendingBatchMarkers.clear();
+
+        batchGeocoder.start(addresses, new BatchGeocoder.Listener() {
+            @Override
+            public void onGeocoded(int index, String address, @Nullable GeocodingResult result,
+                                   @Nullable SearchError searchError) {
+                if (result != null) {
+                    pendingBatchMarkers.put(index, result.coordinates);
+                    scheduleBatchMarkerFlush();
+                } else {
+                    Log.w(TAG, "Could not geocode \"" + address + "\": " + searchError);
                 }
+                if (listener != null) {
+                    listener.onGeocoded(index, address, result, searchError);
+                }
+            }
 
-                for (GeocodingResult geocodingResult : list) {
-                    GeoCoordinates geoCoordinates = geocodingResult.coordinates;    //coordinates of 750 s halsted
-                    Address address = geocodingResult.address;                      //Address: 750 S Halsted
-                    if (address != null) {
-                        String locationDetails = address.addressText
-                                + ". GeoCoordinates: " + geoCoordinates.latitude
-                                + ", " + geoCoordinates.longitude;
-
-                        Log.d(TAG, "" +
-                                ": " + locationDetails);
-                        addPoiMapMarker(geoCoordinates);
-                    }
-                    destCoordinates = geoCoordinates;
+            @Override
+            public void onFinished(int geocodedCount, int failedCount) {
+                flushBatchMarkers();
+                Toast.makeText(context, "Geocoded " + geocodedCount + " addresses, "
+                        + failedCount + " failed.", Toast.LENGTH_LONG).show();
+                if (listener != null) {
+                    listener.onFinished(geocodedCount, failedCount);
                 }
-                //Syntax of how to get the coordinates of the destination location's coordinates
-                destCoordinates = list.get(0).coordinates;
-                addRoute();
             }
         });
+    }
 
+    // Runs on the post-processing worker.
+    private static List<String> readCsvAddresses(File csvFile) throws IOException {
+        List<String> addresses = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String address = AddressIndexBuilder.splitCsvLine(line).get(0);
+                if (addresses.isEmpty() && address.trim().equalsIgnoreCase("address")) {
+                    continue;
+                }
+                addresses.add(address);
+            }
+        }
+        return addresses;
     }
 
-    private void setTapGestureHandler() {
-        mapView.getGestures().setTapListener(touchPoint -> pickMapMarker(touchPoint));
+    // Geocodes one address of a batch in the background, through the caches and the scheduler.
+    private void geocodeForBatch(String address, GeocodingCallback callback) {
+        GeoBox geoBox = batchGeocodingArea;
+        LanguageCode languageCode = LanguageCode.EN_US;
+        List<GeocodingResult> cachedResults = geocodingCache.get(geoBox, address, languageCode, 1);
+        if (cachedResults != null) {
+            callback.onSearchCompleted(null, cachedResults);
+            return;
+        }
+
+        requestScheduler.submit(geocodingCache.persistentKey(geoBox, address, languageCode, 1), null,
+                RequestScheduler.Priority.BACKGROUND,
+                (RequestScheduler.Done<GeocodingResponse> done) -> {
+                    long engineStartNanos = System.nanoTime();
+                    geocodingEngine.searchLocations(geoBox, address, new GeocodingOptions(languageCode, 1),
+                            (searchError, list) -> {
+                                metrics.geocodeEngine.recordSince(engineStartNanos);
+                                if (searchError != null) {
+                                    metrics.searchErrors.increment(searchError);
+                                } else {
+                                    geocodingCache.put(geoBox, address, languageCode, 1, list);
+                                }
+                                done.done(new GeocodingResponse(searchError, list));
+                            });
+                },
+                response -> callback.onSearchCompleted(response.searchError, response.results));
     }
 
+    // Results arrive one by one; they are added to the map a few at a time, in one commit each.
+    private void scheduleBatchMarkerFlush() {
+        if (!batchMarkerFlushScheduled) {
+            batchMarkerFlushScheduled = true;
+            mainHandler.postDelayed(batchMarkerFlush, BATCH_MARKER_INTERVAL_MILLIS);
+        }
+    }
 
-    private void pickMapMarker(final Point2D point2D) {
-        float radiusInPixel = 2;
-        mapView.pickMapItems(point2D, radiusInPixel, new PickMapItemsCallback() {
-            @Override
-            public void onMapItemsPicked(@Nullable PickMapItemsResult pickMapItemsResult) {
-                if (pickMapItemsResult == null) {
-                    return;
-                }
+    private void flushBatchMarkers() {
+        mainHandler.removeCallbacks(batchMarkerFlush);
+        batchMarkerFlushScheduled = false;
+        if (pendingBatchMarkers.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, GeoCoordinates> entry : pendingBatchMarkers.entrySet()) {
+            addPoiMapMarker(BATCH_MARKER_ID + entry.getKey(), entry.getValue());
+        }
+        pendingBatchMarkers.clear();
+        retainedScene.commit();
+    }
+
+    // A search result within the corridor and where it is closest to the route.
+    private static final class CorridorResult {
+        final GeocodingResult result;
+        final double detourInMeters;
+
+        CorridorResult(GeocodingResult result, double detourInMeters) {
+            this.result = result;
+            this.detourInMeters = detourInMeters;
+        }
+    }
+
+    /**
+     * Searches along the shown route instead of in the viewport. Only the tiles the route
+     * corridor touches are searched; results are filtered by their distance to the route and
+     * shown in the order of the detour they cost.
+     */
+    public void searchAlongRoute(String queryString) {
+        PackedShape shape = activeRouteShape;
+        if (shape == null) {
+            showDialog("Error", "Please add a route first.");
+            return;
+        }
+        int generation = ++corridorSearchGeneration;
+        // Tile searches of the previous corridor that have not started yet are no longer wanted.
+        for (int i = 0; i < CORRIDOR_MAX_TILE_COUNT; i++) {
+            requestScheduler.cancel(CORRIDOR_SLOT + i);
+        }
+        postProcessing.submit(() -> createCorridor(shape),
+                corridor -> {
+                    if (generation == corridorSearchGeneration) {
+                        searchCorridorTiles(queryString, corridor, generation);
+                    }
+                },
+                e -> {
+                    if (generation == corridorSearchGeneration) {
+                        showDialog("Search along route", "Error: " + e);
+                    }
+                });
+    }
 
-                MapMarker topmostMapMarker = pickMapItemsResult.getTopmostMarker();
-                if (topmostMapMarker == null) {
+    // Runs on the post-processing worker.
+    private static RouteCorridor createCorridor(PackedShape shape) {
+        double tileSizeInMeters = Math.max(CORRIDOR_MIN_TILE_SIZE_IN_METERS,
+                shape.lengthInMeters() / CORRIDOR_TARGET_TILE_COUNT);
+        RouteCorridor corridor = new RouteCorridor(shape, CORRIDOR_WIDTH_IN_METERS, tileSizeInMeters);
+        while (corridor.getTileCount() > CORRIDOR_MAX_TILE_COUNT) {
+            tileSizeInMeters *= 2;
+            corridor = new RouteCorridor(shape, CORRIDOR_WIDTH_IN_METERS, tileSizeInMeters);
+        }
+        return corridor;
+    }
+
+    private void searchCorridorTiles(String queryString, RouteCorridor corridor, int generation) {
+        Log.d(TAG, "Searching along the route: " + corridor);
+        LanguageCode languageCode = LanguageCode.EN_US;
+        // Adjacent tiles may return the same place; keep it once.
+        Map<String, CorridorResult> resultsByPlace = new HashMap<>();
+        int[] remainingTiles = {corridor.getTileCount()};
+        int[] resultCount = {0};
+        double[] tile = new double[4];
+        for (int i = 0; i < corridor.getTileCount(); i++) {
+            corridor.getTile(i, tile);
+            GeoBox geoBox = new GeoBox(new GeoCoordinates(tile[0], tile[1]), new GeoCoordinates(tile[2], tile[3]));
+            GeocodingCallback tileCallback = (searchError, list) -> {
+                if (generation != corridorSearchGeneration) {
                     return;
                 }
-
-                Metadata metadata = topmostMapMarker.getMetadata();
-                if (metadata != null) {
-                    CustomMetadataValue customMetadataValue = metadata.getCustomValue("key_search_result");
-                    if (customMetadataValue != null) {
-                        SearchResultMetadata searchResultMetadata = (SearchResultMetadata) customMetadataValue;
-                        String title = searchResultMetadata.searchResult.title;
-                        String vicinity = searchResultMetadata.searchResult.vicinity;
-                        SearchCategory category = searchResultMetadata.searchResult.category;
-                        showDialog("Picked Search Result",
-                                title + ", " + vicinity + ". Category: " + category.localizedName);
-                        return;
+                if (searchError == null && list != null) {
+                    resultCount[0] += list.size();
+                    for (GeocodingResult result : list) {
+                        RouteMatcher.Match match = corridor.match(result.coordinates.latitude, result.coordinates.longitude);
+                        if (match != null) {
+                            resultsByPlace.put(result.coordinates.latitude + "," + result.coordinates.longitude,
+                                    new CorridorResult(result, RouteCorridor.detourInMeters(match)));
+                        }
                     }
                 }
+                if (--remainingTiles[0] == 0) {
+                    Log.d(TAG, corridor.getTileCount() + " tile searches returned " + resultCount[0]
+                            + " results, " + resultsByPlace.size() + " within the corridor.");
+                    showCorridorResults(new ArrayList<>(resultsByPlace.values()));
+                }
+            };
 
-                showDialog("Picked Map Marker",
-                        "Geographic coordinates: " +
-                                topmostMapMarker.getCoordinates().latitude + ", " +
-                                topmostMapMarker.getCoordinates().longitude);
+            List<GeocodingResult> cachedResults =
+                    geocodingCache.get(geoBox, queryString, languageCode, CORRIDOR_MAX_RESULTS_PER_TILE);
+            if (cachedResults != null) {
+                tileCallback.onSearchCompleted(null, cachedResults);
+                continue;
             }
-        });
+            // Each tile in its own slot, so that the next corridor search can drop the queued ones.
+            // In the background, so that the tiles do not hold up the routes the user waits for.
+            requestScheduler.submit(
+                    "corridor:" + geocodingCache.persistentKey(geoBox, queryString, languageCode,
+                            CORRIDOR_MAX_RESULTS_PER_TILE),
+                    CORRIDOR_SLOT + i, RequestScheduler.Priority.BACKGROUND,
+                    (RequestScheduler.Done<GeocodingResponse> done) -> {
+                        long engineStartNanos = System.nanoTime();
+                        geocodingEngine.searchLocations(geoBox, queryString,
+                                new GeocodingOptions(languageCode, CORRIDOR_MAX_RESULTS_PER_TILE),
+                                (searchError, list) -> {
+                                    metrics.geocodeEngine.recordSince(engineStartNanos);
+                                    if (searchError != null) {
+                                        metrics.searchErrors.increment(searchError);
+                                    } else {
+                                        geocodingCache.put(geoBox, queryString, languageCode,
+                                                CORRIDOR_MAX_RESULTS_PER_TILE, list);
+                                    }
+                                    done.done(new GeocodingResponse(searchError, list));
+                                });
+                    },
+                    response -> tileCallback.onSearchCompleted(response.searchError, response.results));
+        }
+    }
+
+    private void showCorridorResults(List<CorridorResult> results) {
+        Collections.sort(results, (a, b) -> Double.compare(a.detourInMeters, b.detourInMeters));
+        retainedScene.removeMarkers(CORRIDOR_MARKER_ID);
+        int shownCount = Math.min(results.size(), CORRIDOR_MAX_SHOWN_RESULTS);
+        for (int i = 0; i < shownCount; i++) {
+            CorridorResult corridorResult = results.get(i);
+            String addressText = corridorResult.result.address != null
+                    ? corridorResult.result.address.addressText : "";
+            Log.d(TAG, "Along the route: " + addressText + ", detour at least "
+                    + Math.round(corridorResult.detourInMeters) + " m.");
+            addPoiMapMarker(CORRIDOR_MARKER_ID + i, corridorResult.result.coordinates);
+        }
+        retainedScene.commit();
+        if (results.isEmpty()) {
+            showDialog("Search along route", "No results found along the route.");
+        }
+    }
+
+    // Result of a geocoding request, shared by everybody who asked for it.
+    private static final class GeocodingResponse {
+        @Nullable
+        final SearchError searchError;
+        final List<GeocodingResult> results;
+
+        // Set instead of results when answered from the disk cache or the address index.
+        @Nullable
+        final List<GeocodedAddress> addresses;
+
+        GeocodingResponse(@Nullable SearchError searchError, @Nullable List<GeocodingResult> results) {
+            this.searchError = searchError;
+            this.results = results != null ? results : Collections.emptyList();
+            this.addresses = null;
+        }
+
+        private GeocodingResponse(List<GeocodedAddress> addresses) {
+            this.searchError = null;
+            this.results = Collections.emptyList();
+            this.addresses = addresses;
+        }
+
+        static GeocodingResponse ofAddresses(List<GeocodedAddress> addresses) {
+            return new GeocodingResponse(addresses);
+        }
+    }
+
+    private List<GeocodedAddress> searchAddressIndex(GeoBox geoBox, String queryString, long maxResultCount) {
+        if (addressIndex == null) {
+            return Collections.emptyList();
+        }
+        return addressIndex.search(queryString,
+                geoBox.southWestCorner.latitude, geoBox.southWestCorner.longitude,
+                geoBox.northEastCorner.latitude, geoBox.northEastCorner.longitude,
+                (int) maxResultCount);
+    }
+
+    private static List<GeocodedAddress> toGeocodedAddresses(List<GeocodingResult> list) {
+        List<GeocodedAddress> addresses = new ArrayList<>(list.size());
+        for (GeocodingResult geocodingResult : list) {
+            GeoCoordinates geoCoordinates = geocodingResult.coordinates;    //coordinates of 750 s halsted
+            Address address = geocodingResult.address;                      //Address: 750 S Halsted
+            if (address != null) {
+                addresses.add(new GeocodedAddress(address.addressText,
+                        geoCoordinates.latitude, geoCoordinates.longitude));
+            }
+        }
+        return addresses;
+    }
+
+    // Geocoding results prepared on the post-processing worker.
+    private static final class PreparedGeocoding {
+        final List<GeoCoordinates> poiCoordinates;
+        @Nullable
+        final GeoCoordinates destination;
+
+        PreparedGeocoding(List<GeoCoordinates> poiCoordinates, @Nullable GeoCoordinates destination) {
+            this.poiCoordinates = poiCoordinates;
+            this.destination = destination;
+        }
+    }
+
+    private void showGeocodingResults(List<GeocodingResult> list) {
+        int generation = sceneGeneration;
+        postProcessing.submit(() -> {
+            PreparedGeocoding prepared = prepareGeocoding(toGeocodedAddresses(list));
+            if (prepared.destination == null && !list.isEmpty()) {
+                // Keep routing to the first result even if no result came with an address.
+                return new PreparedGeocoding(prepared.poiCoordinates, list.get(0).coordinates);
+            }
+            return prepared;
+        }, prepared -> applyGeocoding(generation, prepared), e -> showGeocodingError(generation, e));
+    }
+
+    private void showGeocodedAddresses(List<GeocodedAddress> addresses) {
+        int generation = sceneGeneration;
+        postProcessing.submit(() -> prepareGeocoding(addresses), prepared -> applyGeocoding(generation, prepared),
+                e -> showGeocodingError(generation, e));
+    }
+
+    private void showGeocodingError(int generation, Exception e) {
+        if (generation == sceneGeneration) {
+            showDialog("Geocoding", "Error: " + e);
+        }
+    }
+
+    // Runs on the post-processing worker.
+    private static PreparedGeocoding prepareGeocoding(List<GeocodedAddress> addresses) {
+        List<GeoCoordinates> poiCoordinates = new ArrayList<>(addresses.size());
+        for (GeocodedAddress address : addresses) {
+            GeoCoordinates geoCoordinates = new GeoCoordinates(address.latitude, address.longitude);
+            Log.d(TAG, ": " + address.addressText
+                    + ". GeoCoordinates: " + geoCoordinates.latitude
+                    + ", " + geoCoordinates.longitude);
+            poiCoordinates.add(geoCoordinates);
+        }
+        return new PreparedGeocoding(poiCoordinates, poiCoordinates.isEmpty() ? null : poiCoordinates.get(0));
+    }
+
+    private void applyGeocoding(int generation, PreparedGeocoding prepared) {
+        if (generation != sceneGeneration) {
+            // The map was cleared while the results were prepared.
+            return;
+        }
+        if (prepared.destination == null) {
+            clearMap();
+            showDialog("Geocoding", "No geocoding results found.");
+            return;
+        }
+
+        long renderStartNanos = System.nanoTime();
+        // Dense result sets are shown as one marker per grid cell instead of one marker per result.
+        // They are committed together with the route, so the scene is updated once per search.
+        markerClusterLayer.setPoints(prepared.poiCoordinates);
+        metrics.geocodeRender.recordSince(renderStartNanos);
+        destCoordinates = prepared.destination;
+        addRoute();
+        prefetchRoutes(prepared.poiCoordinates);
+    }
+
+    // The first candidate is routed by addRoute(); the next ones are prefetched, so that picking
+    // one of them shows its route at once.
+    private void prefetchRoutes(List<GeoCoordinates> candidates) {
+        if (lastKnownLocation == null || candidates.size() < 2) {
+            return;
+        }
+        List<GeoCoordinates> destinations =
+                candidates.subList(1, Math.min(candidates.size(), PREFETCH_ROUTE_COUNT + 1));
+        routePrefetcher.prefetch(lastKnownLocation, new ArrayList<>(destinations), new CarOptions());
+    }
+
+    // Shows the prefetched route to a picked candidate. Returns false if there is none.
+    private boolean showPrefetchedRoute(GeoCoordinates candidate) {
+        if (lastKnownLocation == null) {
+            return false;
+        }
+        RouteResult route = routePrefetcher.get(lastKnownLocation, candidate);
+        if (route == null) {
+            return false;
+        }
+        Log.d(TAG, "Showing prefetched route. " + routePrefetcher);
+        clearWaypointMapMarker();
+        clearRoute();
+        startGeoCoordinates = lastKnownLocation;
+        destinationGeoCoordinates = candidate;
+        destCoordinates = candidate;
+        showRoute(route);
+        return true;
+    }
+
+    public GeocodingCache getGeocodingCache() {
+        return geocodingCache;
+    }
+
+    private void setTapGestureHandler() {
+        mapView.getGestures().setTapListener(touchPoint -> pickMapMarker(touchPoint));
+    }
+
+
+    // Resolves the tap against the local marker index instead of a pickMapItems() round trip.
+    private void pickMapMarker(final Point2D point2D) {
+        GeoCoordinates tapCoordinates = camera.viewToGeoCoordinates(point2D);
+        if (tapCoordinates == null) {
+            return;
+        }
+
+        double radiusInMeters = PICK_RADIUS_IN_PIXELS
+                * PolylineSimplifier.metersPerPixel(camera.getZoomLevel(), tapCoordinates.latitude);
+        MapMarker topmostMapMarker = markerIndex.findNearest(
+                tapCoordinates.latitude, tapCoordinates.longitude, radiusInMeters);
+        if (topmostMapMarker == null) {
+            return;
+        }
+
+        Metadata metadata = topmostMapMarker.getMetadata();
+        if (metadata != null) {
+            CustomMetadataValue customMetadataValue = metadata.getCustomValue("key_search_result");
+            if (customMetadataValue != null) {
+                SearchResultMetadata searchResultMetadata = (SearchResultMetadata) customMetadataValue;
+                String title = searchResultMetadata.searchResult.title;
+                String vicinity = searchResultMetadata.searchResult.vicinity;
+                SearchCategory category = searchResultMetadata.searchResult.category;
+                showDialog("Picked Search Result",
+                        title + ", " + vicinity + ". Category: " + category.localizedName);
+                return;
+            }
+        }
+
+        if (showPrefetchedRoute(topmostMapMarker.getCoordinates())) {
+            return;
+        }
+
+        showDialog("Picked Map Marker",
+                "Geographic coordinates: " +
+                        topmostMapMarker.getCoordinates().latitude + ", " +
+                        topmostMapMarker.getCoordinates().longitude);
+    }
+
+    /**
+     * Returns all markers on the map within radiusInMeters of the given coordinates.
+     */
+    public List<MapMarker> findMapMarkersNear(GeoCoordinates geoCoordinates, double radiusInMeters) {
+        List<MapMarker> mapMarkers = new ArrayList<>();
+        markerIndex.findWithin(geoCoordinates.latitude, geoCoordinates.longitude, radiusInMeters, mapMarkers);
+        return mapMarkers;
     }
 
 
@@ -247,26 +968,25 @@ public class RoutingExample {
 
 
 
-    private void addPoiMapMarker(GeoCoordinates geoCoordinates) {
-        MapMarker mapMarker = createPoiMapMarker(geoCoordinates);
-        mapView.getMapScene().addMapMarker(mapMarker);
-        mapMarkerList.add(mapMarker);
+    // Markers are changed in the retained scene; they appear on the next commit.
+    private void addPoiMapMarker(String id, GeoCoordinates geoCoordinates) {
+        retainedScene.putMarker(id, geoCoordinates, mapImageCache.getMapImage(R.drawable.poi), poiImageStyle);
     }
 
-    private void addPoiMapMarker(GeoCoordinates geoCoordinates, Metadata metadata) {
-        MapMarker mapMarker = createPoiMapMarker(geoCoordinates);
-        mapMarker.setMetadata(metadata);
-        mapView.getMapScene().addMapMarker(mapMarker);
-        mapMarkerList.add(mapMarker);
+    private void addPoiMapMarker(String id, GeoCoordinates geoCoordinates, Metadata metadata) {
+        retainedScene.putMarker(id, geoCoordinates, mapImageCache.getMapImage(R.drawable.poi), poiImageStyle,
+                metadata);
     }
 
-    private MapMarker createPoiMapMarker(GeoCoordinates geoCoordinates) {
-        MapImage mapImage = MapImageFactory.fromResource(context.getResources(), R.drawable.poi);
-        MapMarker mapMarker = new MapMarker(geoCoordinates);
-        MapMarkerImageStyle mapMarkerImageStyle = new MapMarkerImageStyle();
-        mapMarkerImageStyle.setAnchorPoint(new Anchor2D(0.5F, 1));
-        mapMarker.addImage(mapImage, mapMarkerImageStyle);
-        return mapMarker;
+    // Numbers the markers, so that a marker keeps its id when the list changes only slightly.
+    private void addPoiMapMarkers(String idPrefix, List<GeoCoordinates> geoCoordinatesList) {
+        for (int i = 0; i < geoCoordinatesList.size(); i++) {
+            addPoiMapMarker(idPrefix + i, geoCoordinatesList.get(i));
+        }
+    }
+
+    private void addCircleMapMarker(String id, GeoCoordinates geoCoordinates, int resourceId) {
+        retainedScene.putMarker(id, geoCoordinates, mapImageCache.getMapImage(resourceId), circleImageStyle);
     }
 
 
@@ -286,89 +1006,255 @@ public class RoutingExample {
         List<Waypoint> waypoints =
                 new ArrayList<>(Arrays.asList(startWaypoint, destinationWaypoint));
 
-        routingEngine.calculateRoute(
+        calculateRoute(
                 waypoints, new CarOptions(),
-                new CalculateRouteCallback()
+                new RoutingBackend.Callback()
                 {
                     @Override
-                    public void onRouteCalculated(@Nullable RoutingError routingError, @Nullable List<Route> routes)
+                    public void onRouteCalculated(@Nullable RoutingError routingError, @Nullable List<RouteResult> routes)
                     {
                         if (routingError == null)       //if routing is empty calculate the route
                         {
-                            Route route = routes.get(0);
-                            showRouteDetails(route);
-                            showRouteOnMap(route);
+                            RouteResult route = routes.get(0);
+                            showRoute(route);
                         } else {
+                            // Removes a previous route that is no longer wanted.
+                            retainedScene.commit();
                             showDialog("Error while calculating a route:", routingError.toString());
                         }
                     }
                 });
     }
 
-    private void showRouteDetails(Route route) {
-        int estimatedTravelTimeInSeconds = route.getTravelTimeInSeconds();
-        int lengthInMeters = route.getLengthInMeters();
+    // Calculates a route the user waits for. It supersedes the previous one.
+    private void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions,
+                                RoutingBackend.Callback callback) {
+        calculateRoute(waypoints, carOptions, ROUTE_SLOT, RequestScheduler.Priority.INTERACTIVE, callback);
+    }
 
-        String routeDetails =
-                "Travel Time: " + formatTime(estimatedTravelTimeInSeconds)
-                + ", Length: " + formatLength(lengthInMeters);
+    // Answers repeated requests for (nearly) the same waypoints from the route cache. Requests
+    // for the engine go through the scheduler.
+    private void calculateRoute(List<Waypoint> waypoints, CarOptions carOptions, @Nullable String slot,
+                                RequestScheduler.Priority priority, RoutingBackend.Callback callback) {
+        long issueStartNanos = System.nanoTime();
+        if (slot != null) {
+            // Even when answered from a cache, this request supersedes the one in the slot.
+            requestScheduler.cancel(slot);
+        }
+        List<RouteResult> cachedRoutes = routeCache.get(waypoints, carOptions);
+        if (cachedRoutes != null) {
+            Log.d(TAG, "Route cache hit. " + routeCache);
+            callback.onRouteCalculated(null, cachedRoutes);
+            return;
+        }
 
-        showDialog("Route Details", routeDetails);
+        String persistentKey = routeCache.persistentKey(waypoints, carOptions);
+        metrics.routeIssue.recordSince(issueStartNanos);
+        requestScheduler.submit(routeRequestKey(waypoints, carOptions), slot, priority,
+                (RequestScheduler.Done<RouteResponse> done) -> {
+                    if (persistentKey == null) {
+                        calculateRouteWithBackend(waypoints, carOptions, null, done);
+                        return;
+                    }
+                    // Routes of earlier sessions are stored on disk. The lookup is part of the
+                    // request, so that a superseded request drops it like a backend call.
+                    diskCache.get(persistentKey, DISK_CACHE_ROUTE_MAX_AGE_MILLIS, CacheCodec::decodeRoutes,
+                            persistedRoutes -> {
+                                if (persistedRoutes != null && !persistedRoutes.isEmpty()) {
+                                    routeCache.put(waypoints, carOptions, persistedRoutes);
+                                    done.done(new RouteResponse(null, persistedRoutes));
+                                    return;
+                                }
+                                calculateRouteWithBackend(waypoints, carOptions, persistentKey, done);
+                            });
+                },
+                response -> callback.onRouteCalculated(response.routingError, response.routes));
+    }
+
+    private void calculateRouteWithBackend(List<Waypoint> waypoints, CarOptions carOptions,
+                                           @Nullable String persistentKey,
+                                           RequestScheduler.Done<RouteResponse> done) {
+        long engineStartNanos = System.nanoTime();
+        routingBackend.calculateRoute(waypoints, carOptions, (routingError, routes) -> {
+            metrics.routeEngine.recordSince(engineStartNanos);
+            if (routingError != null) {
+                metrics.routingErrors.increment(routingError);
+            }
+            if (routingError == null && routes != null && !routes.isEmpty()) {
+                routeCache.put(waypoints, carOptions, routes);
+                if (persistentKey != null) {
+                    diskCache.put(persistentKey, () -> CacheCodec.encodeRoutes(routes));
+                }
+            }
+            done.done(new RouteResponse(routingError, routes));
+        });
     }
 
-    private String formatTime(int sec) {
-        int hours = sec / 3600;
-        int minutes = (sec % 3600) / 60;
+    // Result of a routing request, shared by everybody who asked for it.
+    private static final class RouteResponse {
+        @Nullable
+        final RoutingError routingError;
+        @Nullable
+        final List<RouteResult> routes;
 
-        return String.format(Locale.getDefault(), "%02d:%02d", hours, minutes);
+        RouteResponse(@Nullable RoutingError routingError, @Nullable List<RouteResult> routes) {
+            this.routingError = routingError;
+            this.routes = routes;
+        }
     }
 
-    private String formatLength(int meters) {
-        int kilometers = meters / 1000;
-        int remainingMeters = meters % 1000;
+    // Unlike the cache keys, exact: only identical requests share an engine call.
+    private String routeRequestKey(List<Waypoint> waypoints, CarOptions carOptions) {
+        StringBuilder key = new StringBuilder("route:");
+        for (Waypoint waypoint : waypoints) {
+            key.append(waypoint.coordinates.latitude).append(',')
+                    .append(waypoint.coordinates.longitude).append(';');
+        }
+        return key.append(carOptionsId(carOptions)).toString();
+    }
 
-        return String.format(Locale.getDefault(), "%02d.%02d km", kilometers, remainingMeters);
+    // Equal options get the same number, options that only share a hash code different ones.
+    private int carOptionsId(@Nullable CarOptions carOptions) {
+        if (carOptions == null) {
+            return 0;
+        }
+        Integer id = carOptionsIds.get(carOptions);
+        if (id == null) {
+            if (carOptionsIds.size() >= MAX_CAR_OPTIONS_IDS) {
+                // Numbers are never reused, so this only costs the sharing of engine calls.
+                carOptionsIds.clear();
+            }
+            id = ++lastCarOptionsId;
+            carOptionsIds.put(carOptions, id);
+        }
+        return id;
     }
 
-    private void showRouteOnMap(Route route) {
-        // Show route as polyline.
-        GeoPolyline routeGeoPolyline;
-        try {
-            routeGeoPolyline = new GeoPolyline(route.getShape());
-        } catch (InstantiationErrorException e) {
-            // It should never happen that the route shape contains less than two vertices.
-            return;
+    /**
+     * Calculates travel times and lengths from every origin to every destination, e.g. for dispatching.
+     */
+    public void calculateRouteMatrix(List<GeoCoordinates> origins, List<GeoCoordinates> destinations,
+                                     RouteMatrix.Callback callback) {
+        routeMatrix.calculate(origins, destinations, new CarOptions(), callback);
+    }
+
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Latencies and errors of geocoding and routing requests; take a snapshot to read them.
+     */
+    public RoutingMetrics getMetrics() {
+        return metrics;
+    }
+
+    // A route prepared on the post-processing worker, ready to be shown.
+    private static final class PreparedRoute {
+        final RouteResult route;
+        final LodRoutePolyline.Levels levels;
+        final RouteMatcher matcher;
+        final String details;
+
+        PreparedRoute(RouteResult route, LodRoutePolyline.Levels levels, RouteMatcher matcher, String details) {
+            this.route = route;
+            this.levels = levels;
+            this.matcher = matcher;
+            this.details = details;
         }
+    }
 
-//Visualization of what the route looks like => Thickness of route, color of route
-        MapPolylineStyle mapPolylineStyle = new MapPolylineStyle();
-        mapPolylineStyle.setColor(0x00908AA0, PixelFormat.RGBA_8888);
-        mapPolylineStyle.setWidth(5);
-        MapPolyline routeMapPolyline = new MapPolyline(routeGeoPolyline, mapPolylineStyle);
-        mapView.getMapScene().addMapPolyline(routeMapPolyline);
-        mapPolylines.add(routeMapPolyline);
+    // Simplifies, formats and logs on the worker; the main thread only updates the map and shows the dialog.
+    private void showRoute(RouteResult route) {
+        showRoute(route, true);
+    }
 
-        // Draw a circle to indicate starting point and destination.
-        addCircleMapMarker(startGeoCoordinates, R.drawable.green_dot);
-        addCircleMapMarker(destinationGeoCoordinates, R.drawable.green_dot);
+    private void showRoute(RouteResult route, boolean showDetails) {
+        int generation = sceneGeneration;
+        postProcessing.submit(() -> prepareRoute(route), prepared -> {
+            if (generation != sceneGeneration) {
+                // The route was cleared while it was prepared.
+                return;
+            }
+            showRouteOnMap(prepared);
+            if (showDetails) {
+                showDialog("Route Details", prepared.details);
+            }
+        }, e -> {
+            if (generation == sceneGeneration) {
+                retainedScene.commit();
+                showDialog("Error while showing a route:", e.toString());
+            }
+        });
+    }
+
+    // Runs on the post-processing worker. Fails if the route shape contains less than two
+    // vertices, which should never happen.
+    private static PreparedRoute prepareRoute(RouteResult route) {
+        LodRoutePolyline.Levels levels = LodRoutePolyline.simplify(route.getShape());
 
         // Log maneuver instructions per route leg.
-        List<RouteLeg> routeLegs = route.getLegs();
-        for (RouteLeg routeLeg : routeLegs) {
-            logManeuverInstructions(routeLeg);
+        for (List<RouteManeuver> legManeuvers : route.getLegManeuvers()) {
+            logManeuverInstructions(legManeuvers);
         }
+        RouteMatcher matcher = new RouteMatcher(route.getShape(), ROUTE_MATCH_SEARCH_RADIUS_IN_METERS);
+        return new PreparedRoute(route, levels, matcher, RouteFormatter.formatRouteDetails(route));
     }
 
-    private void logManeuverInstructions(RouteLeg routeLeg) {
+    private void showRouteOnMap(PreparedRoute prepared) {
+        long renderStartNanos = System.nanoTime();
+        // Show route as polyline. The shown level of detail follows the zoom level, and only the
+        // parts near the viewport are in the scene. If the same route is on the map already, it
+        // is kept as it is.
+        retainedScene.putRoute(ROUTE_ID, prepared.route.getShape(), prepared.levels, routePolylineStyle);
+        activeRouteShape = prepared.route.getShape();
+        routeMatcher = prepared.matcher;
+        lastMatchedSegment = -1;
+        offRouteDetector.reset();
+
+        // Draw a circle to indicate starting point and destination.
+        addCircleMapMarker(START_MARKER_ID, startGeoCoordinates, R.drawable.green_dot);
+        addCircleMapMarker(DESTINATION_MARKER_ID, destinationGeoCoordinates, R.drawable.green_dot);
+        retainedScene.commit();
+        if (repeatedSearch && retainedScene.getLastCommitChangeCount() != 0) {
+            Log.w(TAG, "Repeated search added or removed " + retainedScene.getLastCommitChangeCount()
+                    + " markers and routes.");
+        }
+        repeatedSearch = false;
+        metrics.routeRender.recordSince(renderStartNanos);
+        if (routeShownListener != null) {
+            routeShownListener.run();
+        }
+    }
+
+    /**
+     * Called on the main thread whenever a route was added to the map.
+     */
+    public void setRouteShownListener(@Nullable Runnable routeShownListener) {
+        this.routeShownListener = routeShownListener;
+    }
+
+    /**
+     * The shape of the route on the map as a flexible polyline, to be stored or sent to other
+     * devices, or null if no route is shown.
+     */
+    @Nullable
+    public String encodeActiveRouteShape() {
+        return activeRouteShape == null ? null : FlexiblePolyline.encode(activeRouteShape, SHARED_SHAPE_PRECISION);
+    }
+
+    //Visualization of what the route looks like => Thickness of route, color of route
+    private MapPolylineStyle createRoutePolylineStyle() {
+        MapPolylineStyle mapPolylineStyle = new MapPolylineStyle();
+        mapPolylineStyle.setColor(0x00908AA0, PixelFormat.RGBA_8888);
+        mapPolylineStyle.setWidth(5);
+        return mapPolylineStyle;
+    }
+
+    private static void logManeuverInstructions(List<RouteManeuver> maneuverInstructions) {
         Log.d(TAG, "Log maneuver instructions per route leg:");
-        List<Maneuver> maneuverInstructions = routeLeg.getManeuvers();
-        for (Maneuver maneuverInstruction : maneuverInstructions) {
-            ManeuverAction maneuverAction = maneuverInstruction.getAction();
-            GeoCoordinates maneuverLocation = maneuverInstruction.getCoordinates();
-            String maneuverInfo = maneuverInstruction.getText()
-                    + ", Action: " + maneuverAction.name()
-                    + ", Location: " + maneuverLocation.toString();
-            Log.d(TAG, maneuverInfo);
+        for (RouteManeuver maneuverInstruction : maneuverInstructions) {
+            Log.d(TAG, RouteFormatter.formatManeuver(maneuverInstruction));
         }
     }
 
@@ -381,49 +1267,88 @@ public class RoutingExample {
         clearWaypointMapMarker();
         clearRoute();
 
-        Waypoint waypoint1 = new Waypoint(createRandomGeoCoordinatesInViewport());
-        Waypoint waypoint2 = new Waypoint(createRandomGeoCoordinatesInViewport());
-        List<Waypoint> waypoints = new ArrayList<>(Arrays.asList(new Waypoint(startGeoCoordinates),
-                waypoint1, waypoint2, new Waypoint(destinationGeoCoordinates)));
+        List<Waypoint> stops = new ArrayList<>();
+        for (int i = 0; i < intermediateWaypointCount; i++) {
+            stops.add(new Waypoint(createRandomGeoCoordinatesInViewport()));
+        }
+        List<Waypoint> waypoints = new ArrayList<>();
+        waypoints.add(new Waypoint(startGeoCoordinates));
+        waypoints.addAll(stops);
+        waypoints.add(new Waypoint(destinationGeoCoordinates));
 
-        routingEngine.calculateRoute(
+        if (optimizeWaypointOrder) {
+            waypoints = optimizeWaypointOrder(waypoints);
+        }
+
+        calculateRoute(
                 waypoints,
                 new CarOptions(),
-                new CalculateRouteCallback() {
+                new RoutingBackend.Callback() {
                     @Override
-                    public void onRouteCalculated(@Nullable RoutingError routingError, @Nullable List<Route> routes) {
+                    public void onRouteCalculated(@Nullable RoutingError routingError, @Nullable List<RouteResult> routes) {
                         if (routingError == null) {
-                            Route route = routes.get(0);
-                            showRouteDetails(route);
-                            showRouteOnMap(route);
-
-                            // Draw a circle to indicate the location of the waypoints.
-                            addCircleMapMarker(waypoint1.coordinates, R.drawable.red_dot);
-                            addCircleMapMarker(waypoint2.coordinates, R.drawable.red_dot);
+                            RouteResult route = routes.get(0);
+                            // Draw a circle to indicate the location of the waypoints. They are
+                            // shown together with the route.
+                            for (int i = 0; i < stops.size(); i++) {
+                                addCircleMapMarker(WAYPOINT_MARKER_ID + i, stops.get(i).coordinates, R.drawable.red_dot);
+                            }
+                            showRoute(route);
                         } else {
+                            retainedScene.commit();
                             showDialog("Error while calculating a route:", routingError.toString());
                         }
                     }
                 });
     }
 
+    public void setOptimizeWaypointOrder(boolean optimizeWaypointOrder) {
+        this.optimizeWaypointOrder = optimizeWaypointOrder;
+    }
+
+    public void setIntermediateWaypointCount(int intermediateWaypointCount) {
+        this.intermediateWaypointCount = intermediateWaypointCount;
+    }
+
+    // Reorders the stops between start and destination, so that the route is calculated only
+    // once, for a short visiting order. Straight-line distance serves as the cost estimate.
+    private List<Waypoint> optimizeWaypointOrder(List<Waypoint> waypoints) {
+        StopOrderOptimizer.CostFunction distance = (from, to) -> {
+            GeoCoordinates a = waypoints.get(from).coordinates;
+            GeoCoordinates b = waypoints.get(to).coordinates;
+            return PackedShape.distanceInMeters(a.latitude, a.longitude, b.latitude, b.longitude);
+        };
+        int[] order = new StopOrderOptimizer(WAYPOINT_ORDER_TIME_BUDGET_MILLIS)
+                .optimize(waypoints.size(), distance);
+
+        List<Waypoint> ordered = new ArrayList<>(waypoints.size());
+        for (int index : order) {
+            ordered.add(waypoints.get(index));
+        }
+        return ordered;
+    }
+
     public void clearMap() {
         clearWaypointMapMarker();
+        markerClusterLayer.clear();
         clearRoute();
+        retainedScene.commit();
+        repeatedSearch = false;
     }
 
+    // Like clearRoute(), only changes the retained scene: whatever is wanted again before the
+    // next commit stays on the map untouched.
     private void clearWaypointMapMarker() {
-        for (MapMarker mapMarker : mapMarkerList) {
-            mapView.getMapScene().removeMapMarker(mapMarker);
-        }
-        mapMarkerList.clear();
+        retainedScene.clearMarkers();
+        // Clusters stay until the cluster layer itself is cleared.
+        markerClusterLayer.putMarkers();
     }
 
     private void clearRoute() {
-        for (MapPolyline mapPolyline : mapPolylines) {
-            mapView.getMapScene().removeMapPolyline(mapPolyline);
-        }
-        mapPolylines.clear();
+        retainedScene.removeRoute(ROUTE_ID);
+        activeRouteShape = null;
+        routeMatcher = null;
+        sceneGeneration++;
     }
 
 
@@ -431,6 +1356,61 @@ public class RoutingExample {
         lastKnownLocation = new GeoCoordinates(latitude, longitude);
     }
 
+    /**
+     * Called for every location update. Keeps the start position fresh and, while a route is
+     * shown, matches the fix against it and calculates a new route once the driver has left it.
+     *
+     * @param accuracyInMeters estimated accuracy of the fix, or 0 if unknown.
+     * @param timeMillis       time of the fix on the elapsed realtime clock.
+     */
+    public void onLocationUpdated(double latitude, double longitude, double accuracyInMeters, long timeMillis) {
+        saveLocation(latitude, longitude);
+        if (!trackingEnabled || routeMatcher == null) {
+            return;
+        }
+
+        RouteMatcher.Match match = routeMatcher.match(latitude, longitude, lastMatchedSegment);
+        double distanceToRoute = Double.POSITIVE_INFINITY;
+        if (match != null) {
+            lastMatchedSegment = match.segmentIndex;
+            distanceToRoute = match.distanceToRouteInMeters;
+        }
+        if (offRouteDetector.onFix(distanceToRoute, accuracyInMeters, timeMillis)) {
+            reroute();
+        }
+    }
+
+    public void setTrackingEnabled(boolean trackingEnabled) {
+        this.trackingEnabled = trackingEnabled;
+    }
+
+    // Calculates a route from the current position to the destination. Intermediate waypoints
+    // of the previous route are dropped.
+    private void reroute() {
+        if (destinationGeoCoordinates == null) {
+            return;
+        }
+        Log.d(TAG, "Off route, calculating a new route.");
+        startGeoCoordinates = lastKnownLocation;
+        List<Waypoint> waypoints = Arrays.asList(
+                new Waypoint(startGeoCoordinates), new Waypoint(destinationGeoCoordinates));
+        int generation = sceneGeneration;
+        calculateRoute(waypoints, new CarOptions(), (routingError, routes) -> {
+            if (generation != sceneGeneration) {
+                // The route was cleared or replaced in the meantime.
+                return;
+            }
+            if (routingError != null || routes == null || routes.isEmpty()) {
+                // Keep following the old route; the detector retries after its rate limit.
+                Log.e(TAG, "Rerouting failed: " + routingError);
+                return;
+            }
+            clearWaypointMapMarker();
+            clearRoute();
+            showRoute(routes.get(0), false);
+        });
+    }
+
 
 
     //This function makes a RANDOMLY generates coordinate
@@ -440,35 +1420,20 @@ public class RoutingExample {
         GeoCoordinates northEast = geoBox.northEastCorner;
         GeoCoordinates southWest = geoBox.southWestCorner;
 
-        double minLat = southWest.latitude;
-        double maxLat = northEast.latitude;
-        double lat = getRandom(minLat, maxLat);
-
-        double minLon = southWest.longitude;
-        double maxLon = northEast.longitude;
-        double lon = getRandom(minLon, maxLon);
+        double lat = randomCoordinates.nextLatitude(southWest.latitude, northEast.latitude);
+        double lon = randomCoordinates.nextLongitude(southWest.longitude, northEast.longitude);
 
         return new GeoCoordinates(lat, lon);
         //return lastKnownLocation;
     }
 
-    private double getRandom(double min, double max) {
-        return min + Math.random() * (max - min);
-    }
-
-    private void addCircleMapMarker(GeoCoordinates geoCoordinates, int resourceId) {
-        MapImage mapImage = MapImageFactory.fromResource(context.getResources(), resourceId);
-        MapMarker mapMarker = new MapMarker(geoCoordinates);
-        mapMarker.addImage(mapImage, new MapMarkerImageStyle());
-        mapView.getMapScene().addMapMarker(mapMarker);
-        mapMarkerList.add(mapMarker);
-    }
-
     private void showDialog(String title, String message) {
         AlertDialog.Builder builder =
                 new AlertDialog.Builder(context);
         builder.setTitle(title);
         builder.setMessage(message);
+        long displayStartNanos = System.nanoTime();
         builder.show();
+        metrics.dialogDisplay.recordSince(displayStartNanos);
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.SystemClock;
+
+import com.here.routing.core.ErrorCounts;
+import com.here.routing.core.LatencyHistogram;
+import com.here.sdk.routing.RoutingError;
+import com.here.sdk.search.SearchError;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latencies of the stages of geocoding and routing requests, and their errors.
+ * Recording is lock-free and allocation-free; call {@link #snapshot()} to read the numbers.
+ *
+ * Stages of a request:
+ * <ul>
+ *   <li>issue: from the user action until the request is sent, including cache lookups.</li>
+ *   <li>engine: from sending the request until the engine calls back.</li>
+ *   <li>render: adding the markers or the route polyline to the map.</li>
+ * </ul>
+ */
+public final class RoutingMetrics {
+
+    public final LatencyHistogram geocodeIssue = new LatencyHistogram();
+    public final LatencyHistogram geocodeEngine = new LatencyHistogram();
+    public final LatencyHistogram geocodeRender = new LatencyHistogram();
+    public final LatencyHistogram routeIssue = new LatencyHistogram();
+    public final LatencyHistogram routeEngine = new LatencyHistogram();
+    public final LatencyHistogram routeRender = new LatencyHistogram();
+    public final LatencyHistogram dialogDisplay = new LatencyHistogram();
+    public final ErrorCounts<SearchError> searchErrors = new ErrorCounts<>(SearchError.class);
+    public final ErrorCounts<RoutingError> routingErrors = new ErrorCounts<>(RoutingError.class);
+
+    private volatile long startTimeMillis = SystemClock.elapsedRealtime();
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        geocodeIssue.reset();
+        geocodeEngine.reset();
+        geocodeRender.reset();
+        routeIssue.reset();
+        routeEngine.reset();
+        routeRender.reset();
+        dialogDisplay.reset();
+        searchErrors.reset();
+        routingErrors.reset();
+        startTimeMillis = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * The metrics at one point in time.
+     */
+    public static final class Snapshot {
+        public final long elapsedMillis;
+        public final LatencyHistogram.Snapshot geocodeIssue;
+        public final LatencyHistogram.Snapshot geocodeEngine;
+        public final LatencyHistogram.Snapshot geocodeRender;
+        public final LatencyHistogram.Snapshot routeIssue;
+        public final LatencyHistogram.Snapshot routeEngine;
+        public final LatencyHistogram.Snapshot routeRender;
+        public final LatencyHistogram.Snapshot dialogDisplay;
+        public final Map<SearchError, Long> searchErrors;
+        public final Map<RoutingError, Long> routingErrors;
+
+        Snapshot(RoutingMetrics metrics) {
+            elapsedMillis = SystemClock.elapsedRealtime() - metrics.startTimeMillis;
+            geocodeIssue = metrics.geocodeIssue.snapshot();
+            geocodeEngine = metrics.geocodeEngine.snapshot();
+            geocodeRender = metrics.geocodeRender.snapshot();
+            routeIssue = metrics.routeIssue.snapshot();
+            routeEngine = metrics.routeEngine.snapshot();
+            routeRender = metrics.routeRender.snapshot();
+            dialogDisplay = metrics.dialogDisplay.snapshot();
+            searchErrors = metrics.searchErrors.snapshot();
+            routingErrors = metrics.routingErrors.snapshot();
+        }
+
+        /**
+         * @return engine requests per minute since the metrics were created or reset.
+         */
+        public double getRequestsPerMinute() {
+            if (elapsedMillis <= 0) {
+                return 0;
+            }
+            return (geocodeEngine.getCount() + routeEngine.getCount()) * 60_000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "RoutingMetrics over " + elapsedMillis / 1000 + " s"
+                    + String.format(Locale.ROOT, ", %.1f requests/min", getRequestsPerMinute())
+                    + "\n  geocode issue:  " + geocodeIssue
+                    + "\n  geocode engine: " + geocodeEngine
+                    + "\n  geocode render: " + geocodeRender
+                    + "\n  route issue:    " + routeIssue
+                    + "\n  route engine:   " + routeEngine
+                    + "\n  route render:   " + routeRender
+                    + "\n  dialog:         " + dialogDisplay
+                    + "\n  search errors:  " + searchErrors
+                    + "\n  routing errors: " + routingErrors;
+        }
+    }
+}
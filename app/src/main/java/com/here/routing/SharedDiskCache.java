@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.here.routing.core.DiskCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The {@link DiskCache} of the process. Activities come and go, e.g. on rotation, but share
+ * this one instance, so that two instances never write to the same file.
+ *
+ * The file is opened, read and written on a single background thread, which keeps all
+ * accesses in order; the main thread never waits for the disk. Lookup results are delivered
+ * on the main thread.
+ */
+public final class SharedDiskCache {
+
+    private static final String TAG = SharedDiskCache.class.getName();
+
+    /**
+     * Decodes a cached value; called on the disk cache thread. Returns null if the value is unusable.
+     */
+    public interface Decoder<T> {
+        @Nullable
+        T decode(byte[] value);
+    }
+
+    /**
+     * Encodes a value for the cache; called on the disk cache thread.
+     */
+    public interface Encoder {
+        byte[] encode();
+    }
+
+    public interface Callback<T> {
+        void onResult(@Nullable T value);
+    }
+
+    @Nullable
+    private static SharedDiskCache instance;
+
+    private final File file;
+    private final long maxSizeInBytes;
+    // Never shut down: the cache lives as long as the process.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only accessed on the executor thread.
+    @Nullable
+    private DiskCache diskCache;
+    private boolean openFailed;
+
+    /**
+     * Returns the cache of the process, creating it on first use. The file is opened in the background.
+     */
+    public static synchronized SharedDiskCache getInstance(File file, long maxSizeInBytes) {
+        if (instance == null) {
+            instance = new SharedDiskCache(file, maxSizeInBytes);
+        }
+        return instance;
+    }
+
+    private SharedDiskCache(File file, long maxSizeInBytes) {
+        this.file = file;
+        this.maxSizeInBytes = maxSizeInBytes;
+        executor.execute(this::open);
+    }
+
+    /**
+     * Looks up a value no older than maxAgeMillis, use Long.MAX_VALUE for any age. The callback
+     * receives null on a miss.
+     */
+    public <T> void get(String key, long maxAgeMillis, Decoder<T> decoder, Callback<T> callback) {
+        executor.execute(() -> {
+            DiskCache cache = open();
+            byte[] value = cache != null ? cache.get(key, maxAgeMillis) : null;
+            T decoded = value != null ? decoder.decode(value) : null;
+            if (decoded != null) {
+                Log.d(TAG, "Disk cache hit. " + cache);
+            }
+            mainHandler.post(() -> callback.onResult(decoded));
+        });
+    }
+
+    public void put(String key, Encoder encoder) {
+        executor.execute(() -> {
+            DiskCache cache = open();
+            if (cache == null) {
+                return;
+            }
+            try {
+                cache.put(key, encoder.encode());
+            } catch (IOException e) {
+                Log.e(TAG, "Disk cache write failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Forces pending writes to disk, e.g. when the process may be killed.
+     */
+    public void sync() {
+        executor.execute(() -> {
+            if (diskCache == null) {
+                return;
+            }
+            try {
+                diskCache.sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Disk cache sync failed: " + e.getMessage());
+            }
+        });
+    }
+
+    // Opens the file on first use; a file that cannot be opened is not tried again.
+    @Nullable
+    private DiskCache open() {
+        if (diskCache != null || openFailed) {
+            return diskCache;
+        }
+        long startTime = System.nanoTime();
+        try {
+            diskCache = DiskCache.open(file, maxSizeInBytes);
+            Log.d(TAG, "Disk cache opened in " + (System.nanoTime() - startTime) / 1_000_000 + " ms. " + diskCache);
+        } catch (IOException e) {
+            Log.e(TAG, "Disk cache could not be opened: " + e.getMessage());
+            openFailed = true;
+        }
+        return diskCache;
+    }
+}
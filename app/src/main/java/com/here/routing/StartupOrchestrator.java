@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Coordinates the independent steps of a cold start, which run concurrently, and holds back
+ * actions until the steps they depend on are done. Actions run in the order they were queued.
+ * Also logs when each step finished and the time until the first route was shown.
+ *
+ * Expected to be used from the main thread.
+ */
+public final class StartupOrchestrator {
+
+    private static final String TAG = StartupOrchestrator.class.getName();
+
+    public enum Step {
+        ENGINES,
+        MAP_SCENE,
+        LOCATION
+    }
+
+    private static final class QueuedAction {
+        final EnumSet<Step> requiredSteps;
+        final Runnable action;
+
+        QueuedAction(EnumSet<Step> requiredSteps, Runnable action) {
+            this.requiredSteps = requiredSteps;
+            this.action = action;
+        }
+    }
+
+    private final long startTimeMillis = SystemClock.elapsedRealtime();
+    private final EnumMap<Step, Long> completionTimesMillis = new EnumMap<>(Step.class);
+    private final List<QueuedAction> queuedActions = new ArrayList<>();
+    private boolean firstRouteReported;
+
+    public void markDone(Step step) {
+        if (completionTimesMillis.containsKey(step)) {
+            return;
+        }
+        completionTimesMillis.put(step, SystemClock.elapsedRealtime() - startTimeMillis);
+        Log.d(TAG, step + " done after " + completionTimesMillis.get(step) + " ms.");
+
+        // Actions may queue further actions while they run, so iterate over a copy.
+        List<QueuedAction> runnable = new ArrayList<>();
+        for (Iterator<QueuedAction> iterator = queuedActions.iterator(); iterator.hasNext(); ) {
+            QueuedAction queuedAction = iterator.next();
+            if (completionTimesMillis.keySet().containsAll(queuedAction.requiredSteps)) {
+                runnable.add(queuedAction);
+                iterator.remove();
+            }
+        }
+        for (QueuedAction queuedAction : runnable) {
+            queuedAction.action.run();
+        }
+    }
+
+    public boolean isDone(Step step) {
+        return completionTimesMillis.containsKey(step);
+    }
+
+    /**
+     * Runs the action as soon as all steps are done.
+     *
+     * @return true if it ran right away, false if it was queued.
+     */
+    public boolean runWhenReady(Runnable action) {
+        return runAfter(EnumSet.allOf(Step.class), action);
+    }
+
+    /**
+     * Runs the action as soon as the given steps are done.
+     *
+     * @return true if it ran right away, false if it was queued.
+     */
+    public boolean runAfter(EnumSet<Step> requiredSteps, Runnable action) {
+        if (completionTimesMillis.keySet().containsAll(requiredSteps)) {
+            action.run();
+            return true;
+        }
+        queuedActions.add(new QueuedAction(EnumSet.copyOf(requiredSteps), action));
+        return false;
+    }
+
+    /**
+     * Call whenever a route was shown; the first call logs the time to first route.
+     */
+    public void onRouteShown() {
+        if (firstRouteReported) {
+            return;
+        }
+        firstRouteReported = true;
+        Log.d(TAG, "Time to first route: " + (SystemClock.elapsedRealtime() - startTimeMillis)
+                + " ms. Startup steps done after (ms): " + completionTimesMillis);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.here.sdk.core.GeoBox;
+import com.here.sdk.core.LanguageCode;
+import com.here.sdk.search.GeocodingEngine;
+import com.here.sdk.search.GeocodingOptions;
+import com.here.sdk.search.GeocodingResult;
+import com.here.sdk.search.SearchError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geocodes a query while the user is typing. Keystrokes are debounced, and only the answer to
+ * the latest query is delivered: requests go through the scheduler in one slot, so a newer
+ * query drops the callback of the previous one, or keeps it from starting at all.
+ * If a shorter prefix already returned all results the engine had, a longer query is answered
+ * by filtering those results instead of asking the engine again.
+ */
+public class TypeAheadGeocoder {
+
+    private static final String TAG = TypeAheadGeocoder.class.getName();
+    private static final String SLOT = "suggest";
+
+    public interface Listener {
+        void onSuggestions(String query, List<GeocodingResult> suggestions);
+    }
+
+    private static final class Response {
+        @Nullable
+        final SearchError searchError;
+        @Nullable
+        final List<GeocodingResult> results;
+
+        Response(@Nullable SearchError searchError, @Nullable List<GeocodingResult> results) {
+            this.searchError = searchError;
+            this.results = results;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final GeocodingEngine geocodingEngine;
+    private final RequestScheduler requestScheduler;
+    private final GeocodingCache geocodingCache;
+    private final LanguageCode languageCode;
+    private final long maxResultCount;
+    private final long debounceMillis;
+    private final int minQueryLength;
+    private final Listener listener;
+
+    // Incremented for every query change, so that stale callbacks can be recognized.
+    private long generation;
+    private Runnable pendingSearch;
+
+    // The last complete answer from the engine, used to serve longer prefixes locally.
+    private String lastQuery;
+    private GeoBox lastGeoBox;
+    private List<GeocodingResult> lastResults;
+
+    public TypeAheadGeocoder(GeocodingEngine geocodingEngine, RequestScheduler requestScheduler,
+                             GeocodingCache geocodingCache, LanguageCode languageCode, long maxResultCount,
+                             long debounceMillis, int minQueryLength, Listener listener) {
+        this.geocodingEngine = geocodingEngine;
+        this.requestScheduler = requestScheduler;
+        this.geocodingCache = geocodingCache;
+        this.languageCode = languageCode;
+        this.maxResultCount = maxResultCount;
+        this.debounceMillis = debounceMillis;
+        this.minQueryLength = minQueryLength;
+        this.listener = listener;
+    }
+
+    public void onQueryChanged(String text, GeoBox geoBox) {
+        final long requestGeneration = ++generation;
+        cancelPendingSearch();
+
+        final String query = GeocodingCache.normalizeQuery(text);
+        if (query.length() < minQueryLength) {
+            return;
+        }
+
+        List<GeocodingResult> prefixResults = filterLastResults(query, geoBox);
+        if (prefixResults != null) {
+            listener.onSuggestions(query, prefixResults);
+            return;
+        }
+
+        pendingSearch = () -> {
+            pendingSearch = null;
+            search(query, geoBox, requestGeneration);
+        };
+        handler.postDelayed(pendingSearch, debounceMillis);
+    }
+
+    /**
+     * Drops the pending search and any callback still in flight, e.g. when the query was submitted.
+     */
+    public void cancel() {
+        generation++;
+        cancelPendingSearch();
+        requestScheduler.cancel(SLOT);
+    }
+
+    private void cancelPendingSearch() {
+        if (pendingSearch != null) {
+            handler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+    }
+
+    private void search(String query, GeoBox geoBox, long requestGeneration) {
+        List<GeocodingResult> cachedResults =
+                geocodingCache.get(geoBox, query, languageCode, maxResultCount);
+        if (cachedResults != null) {
+            deliver(query, geoBox, cachedResults);
+            return;
+        }
+
+        GeocodingOptions geocodingOptions = new GeocodingOptions(languageCode, maxResultCount);
+        String key = "suggest:" + geocodingCache.persistentKey(geoBox, query, languageCode, maxResultCount);
+        requestScheduler.submit(key, SLOT, RequestScheduler.Priority.INTERACTIVE,
+                (RequestScheduler.Done<Response> done) ->
+                        geocodingEngine.searchLocations(geoBox, query, geocodingOptions,
+                                (searchError, list) -> done.done(new Response(searchError, list))),
+                response -> {
+                    if (requestGeneration != generation) {
+                        // A newer query was typed in the meantime.
+                        return;
+                    }
+                    if (response.searchError != null) {
+                        Log.d(TAG, "Type-ahead search failed: " + response.searchError.toString());
+                        return;
+                    }
+                    geocodingCache.put(geoBox, query, languageCode, maxResultCount, response.results);
+                    deliver(query, geoBox, response.results);
+                });
+    }
+
+    private void deliver(String query, GeoBox geoBox, List<GeocodingResult> results) {
+        lastQuery = query;
+        lastGeoBox = geoBox;
+        lastResults = results;
+        listener.onSuggestions(query, results);
+    }
+
+    // Returns null if the last results cannot be reused for this query.
+    private List<GeocodingResult> filterLastResults(String query, GeoBox geoBox) {
+        if (lastResults == null || !query.startsWith(lastQuery) || !geoBox.equals(lastGeoBox)) {
+            return null;
+        }
+        if (lastResults.size() >= maxResultCount) {
+            // The engine may have truncated the list, so a longer query could find other results.
+            return null;
+        }
+
+        String[] tokens = query.split(" ");
+        List<GeocodingResult> filtered = new ArrayList<>();
+        for (GeocodingResult result : lastResults) {
+            if (result.address != null && containsAll(result.address.addressText, tokens)) {
+                filtered.add(result);
+            }
+        }
+        return filtered;
+    }
+
+    private static boolean containsAll(String addressText, String[] tokens) {
+        if (addressText == null) {
+            return false;
+        }
+        String normalizedAddress = GeocodingCache.normalizeQuery(addressText);
+        for (String token : tokens) {
+            if (!normalizedAddress.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.RoadGraph;
+import com.here.routing.core.RouteManeuver;
+import com.here.routing.core.RouteResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic but realistically shaped inputs, generated from fixed seeds so that runs compare.
+ */
+final class BenchmarkData {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+    // Typical vertex spacing of a routing engine shape in urban areas.
+    private static final double VERTEX_SPACING_IN_METERS = 15;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * A gently winding route starting in Chicago, with vertexCount vertices.
+     */
+    static PackedShape routeShape(int vertexCount, long seed) {
+        Random random = new Random(seed);
+        double[] latitudes = new double[vertexCount];
+        double[] longitudes = new double[vertexCount];
+        double latitude = 41.871657;
+        double longitude = -87.647428;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < vertexCount; i++) {
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            heading += random.nextGaussian() * 0.2;
+            double step = VERTEX_SPACING_IN_METERS * (0.5 + random.nextDouble());
+            latitude += Math.cos(heading) * step / METERS_PER_DEGREE_LATITUDE;
+            longitude += Math.sin(heading) * step / (METERS_PER_DEGREE_LATITUDE * cosLatitude);
+        }
+        return new PackedShape(latitudes, longitudes, vertexCount);
+    }
+
+    /**
+     * A route over the given shape, with a maneuver about every 40 vertices.
+     */
+    static RouteResult route(PackedShape shape) {
+        List<RouteManeuver> maneuvers = new ArrayList<>();
+        String[] actions = {"DEPART", "LEFT_TURN", "RIGHT_TURN", "SLIGHT_LEFT_TURN", "ARRIVE"};
+        for (int i = 0; i < shape.size(); i += 40) {
+            String action = i == 0 ? actions[0] : actions[1 + (i / 40) % 3];
+            maneuvers.add(new RouteManeuver("Turn onto W Roosevelt Rd toward S Halsted St", action,
+                    shape.latitude(i), shape.longitude(i)));
+        }
+        int last = shape.size() - 1;
+        maneuvers.add(new RouteManeuver("Arrive at your destination", actions[4],
+                shape.latitude(last), shape.longitude(last)));
+        int lengthInMeters = (int) shape.lengthInMeters();
+        return new RouteResult(shape, lengthInMeters, lengthInMeters / 10,
+                Arrays.asList(maneuvers));
+    }
+
+    /**
+     * A square street grid with two-way streets, side x side nodes about 100 m apart.
+     */
+    static RoadGraph gridGraph(int side, long seed) {
+        Random random = new Random(seed);
+        int nodeCount = side * side;
+        int[] latitudes = new int[nodeCount];
+        int[] longitudes = new int[nodeCount];
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                latitudes[row * side + column] = 418_000_000 + row * 9_000;
+                longitudes[row * side + column] = -876_000_000 + column * 12_000;
+            }
+        }
+
+        int[] firstEdge = new int[nodeCount + 1];
+        List<int[]> edges = new ArrayList<>();
+        int[][] directions = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+        for (int node = 0; node < nodeCount; node++) {
+            firstEdge[node] = edges.size();
+            int row = node / side;
+            int column = node % side;
+            for (int[] direction : directions) {
+                int targetRow = row + direction[0];
+                int targetColumn = column + direction[1];
+                if (targetRow < 0 || targetRow >= side || targetColumn < 0 || targetColumn >= side) {
+                    continue;
+                }
+                int lengthInDecimeters = 1000;
+                // Speeds between 30 and 60 km/h.
+                int timeInDeciseconds = (int) (lengthInDecimeters / (8.3 + random.nextDouble() * 8.3));
+                edges.add(new int[] {targetRow * side + targetColumn, lengthInDecimeters, timeInDeciseconds});
+            }
+        }
+        firstEdge[nodeCount] = edges.size();
+
+        int[] edgeTarget = new int[edges.size()];
+        int[] edgeLength = new int[edges.size()];
+        int[] edgeTime = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            edgeTarget[i] = edges.get(i)[0];
+            edgeLength[i] = edges.get(i)[1];
+            edgeTime[i] = edges.get(i)[2];
+        }
+        return new RoadGraph(latitudes, longitudes, firstEdge, edgeTarget, edgeLength, edgeTime);
+    }
+}
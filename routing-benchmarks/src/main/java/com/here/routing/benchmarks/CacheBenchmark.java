@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.BoundedLruCache;
+import com.here.routing.core.CacheCodec;
+import com.here.routing.core.DiskCache;
+import com.here.routing.core.RouteResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory LRU lookups and the warm-up and reads of the persistent cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    private static final int KEY_COUNT = 10_000;
+    // About the number of routes a session with a 16 MB cache file holds.
+    private static final int DISK_ENTRY_COUNT = 5_000;
+
+    private RouteResult route;
+    private BoundedLruCache<String, RouteResult> lruCache;
+    private String[] keys;
+    private final Random random = new Random(3);
+    private File diskCacheFile;
+    private DiskCache diskCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        route = BenchmarkData.route(BenchmarkData.routeShape(1_000, 11));
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "route:" + i;
+        }
+        // Room for a tenth of the keys, so that lookups mix hits, misses and evictions.
+        lruCache = new BoundedLruCache<>(KEY_COUNT / 10, (key, value) -> 1);
+
+        byte[] value = CacheCodec.encodeRoutes(Collections.singletonList(route));
+        diskCacheFile = File.createTempFile("routing_cache", ".bin");
+        diskCache = DiskCache.open(diskCacheFile, 64L * 1024 * 1024);
+        for (int i = 0; i < DISK_ENTRY_COUNT; i++) {
+            diskCache.put(keys[i], value);
+        }
+        diskCache.sync();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        diskCache.close();
+        diskCacheFile.delete();
+    }
+
+    @Benchmark
+    public RouteResult lruGetOrPut() {
+        String key = keys[random.nextInt(KEY_COUNT)];
+        RouteResult route = lruCache.get(key);
+        if (route == null) {
+            lruCache.put(key, this.route);
+        }
+        return route;
+    }
+
+    @Benchmark
+    public Object diskGetAndDecode() {
+        return CacheCodec.decodeRoutes(diskCache.get(keys[random.nextInt(DISK_ENTRY_COUNT)]));
+    }
+
+    // Opening the cache file at startup, with all entries synced.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int diskWarmUp() throws IOException {
+        try (DiskCache warmedUp = DiskCache.open(diskCacheFile, 64L * 1024 * 1024)) {
+            return warmedUp.size();
+        }
+    }
+}
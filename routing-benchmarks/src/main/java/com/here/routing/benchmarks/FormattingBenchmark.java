@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.RouteFormatter;
+import com.here.routing.core.RouteManeuver;
+import com.here.routing.core.RouteResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text assembly for the route details dialog and the maneuver log.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormattingBenchmark {
+
+    private RouteResult route;
+    private List<RouteManeuver> maneuvers;
+
+    @Setup
+    public void setUp() {
+        route = BenchmarkData.route(BenchmarkData.routeShape(2_000, 7));
+        maneuvers = route.getLegManeuvers().get(0);
+    }
+
+    @Benchmark
+    public String formatRouteDetails() {
+        return RouteFormatter.formatRouteDetails(route);
+    }
+
+    // All maneuvers of a route with about 50 maneuvers, as logged after each route calculation.
+    @Benchmark
+    public void formatManeuvers(Blackhole blackhole) {
+        for (RouteManeuver maneuver : maneuvers) {
+            blackhole.consume(RouteFormatter.formatManeuver(maneuver));
+        }
+    }
+}
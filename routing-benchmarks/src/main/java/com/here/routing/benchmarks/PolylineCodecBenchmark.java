@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.FlexiblePolyline;
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.RouteManeuver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flexible polyline encoding of shapes and maneuvers, against the plain text form
+ * "latitude,longitude;" per vertex. The encoded lengths are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PolylineCodecBenchmark {
+
+    private static final int PRECISION = 5;
+
+    @Param({"1000", "10000", "100000"})
+    public int vertexCount;
+
+    private PackedShape shape;
+    private List<RouteManeuver> maneuvers;
+    private String encodedShape;
+    private String textShape;
+    private String encodedManeuvers;
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        shape = BenchmarkData.routeShape(vertexCount, 42);
+        maneuvers = BenchmarkData.route(shape).getLegManeuvers().get(0);
+        encodedShape = FlexiblePolyline.encode(shape, PRECISION);
+        textShape = toText(shape);
+        encodedManeuvers = FlexiblePolyline.encodeManeuvers(maneuvers, PRECISION);
+        System.out.println("\nFlexible polyline: " + encodedShape.length() + " chars, text: "
+                + textShape.length() + " chars, maneuvers: " + encodedManeuvers.length() + " chars");
+    }
+
+    @Benchmark
+    public String encodeFlexiblePolyline() {
+        return FlexiblePolyline.encode(shape, PRECISION);
+    }
+
+    // Streaming into a reused buffer, as when writing many shapes in a row.
+    @Benchmark
+    public int encodeFlexiblePolylineStreaming() {
+        buffer.setLength(0);
+        FlexiblePolyline.Encoder encoder = new FlexiblePolyline.Encoder(PRECISION, buffer);
+        for (int i = 0; i < shape.size(); i++) {
+            encoder.add(shape.latitude(i), shape.longitude(i));
+        }
+        return buffer.length();
+    }
+
+    @Benchmark
+    public String encodeText() {
+        return toText(shape);
+    }
+
+    @Benchmark
+    public PackedShape decodeFlexiblePolyline() {
+        return FlexiblePolyline.decode(encodedShape);
+    }
+
+    // Visiting the vertices without building a shape, e.g. to compute bounds.
+    @Benchmark
+    public double decodeFlexiblePolylineStreaming() {
+        FlexiblePolyline.Decoder decoder = new FlexiblePolyline.Decoder(encodedShape);
+        double maxLatitude = -90;
+        while (decoder.next()) {
+            maxLatitude = Math.max(maxLatitude, decoder.latitude());
+        }
+        return maxLatitude;
+    }
+
+    @Benchmark
+    public PackedShape decodeText() {
+        String[] vertices = textShape.split(";");
+        double[] latitudes = new double[vertices.length];
+        double[] longitudes = new double[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            int comma = vertices[i].indexOf(',');
+            latitudes[i] = Double.parseDouble(vertices[i].substring(0, comma));
+            longitudes[i] = Double.parseDouble(vertices[i].substring(comma + 1));
+        }
+        return new PackedShape(latitudes, longitudes, vertices.length);
+    }
+
+    @Benchmark
+    public String encodeManeuvers() {
+        return FlexiblePolyline.encodeManeuvers(maneuvers, PRECISION);
+    }
+
+    @Benchmark
+    public List<RouteManeuver> decodeManeuvers() {
+        return FlexiblePolyline.decodeManeuvers(encodedManeuvers);
+    }
+
+    private static String toText(PackedShape shape) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < shape.size(); i++) {
+            text.append(shape.latitude(i)).append(',').append(shape.longitude(i)).append(';');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.CacheCodec;
+import com.here.routing.core.PackedShape;
+import com.here.routing.core.PolylineChunks;
+import com.here.routing.core.PolylineSimplifier;
+import com.here.routing.core.RouteResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shape handling on route sizes from a short city trip to a long cross-country route.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShapeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int vertexCount;
+
+    private PackedShape shape;
+    private int[] deltas;
+    private byte[] encodedRoute;
+    private RouteResult route;
+    private int[] keptIndices;
+    private PolylineSimplifier simplifier;
+    private int[] allIndices;
+    private PolylineChunks chunks;
+    private int[] visibleChunks;
+
+    @Setup
+    public void setUp() {
+        shape = BenchmarkData.routeShape(vertexCount, 42);
+        deltas = shape.toFixedPointDeltas(6);
+        route = BenchmarkData.route(shape);
+        encodedRoute = CacheCodec.encodeRoutes(Collections.singletonList(route));
+        keptIndices = new int[vertexCount];
+        simplifier = new PolylineSimplifier();
+        allIndices = new int[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            allIndices[i] = i;
+        }
+        chunks = splitFullDetail();
+        visibleChunks = new int[chunks.size()];
+    }
+
+    // Tolerance of one pixel at zoom level 15, the finest simplified level.
+    @Benchmark
+    public int simplifyCityZoom() {
+        return new PolylineSimplifier().simplify(shape, 3.5, keptIndices);
+    }
+
+    // Tolerance of one pixel at zoom level 5, the coarsest level.
+    @Benchmark
+    public int simplifyCountryZoom() {
+        return new PolylineSimplifier().simplify(shape, 3_600, keptIndices);
+    }
+
+    // Same simplifier and shape as the last call, as when switching between levels of detail.
+    @Benchmark
+    public int simplifyReusingProjection() {
+        return simplifier.simplify(shape, 3.5, keptIndices);
+    }
+
+    @Benchmark
+    public double lengthInMeters() {
+        return shape.lengthInMeters();
+    }
+
+    @Benchmark
+    public int[] toFixedPointDeltas() {
+        return shape.toFixedPointDeltas(6);
+    }
+
+    @Benchmark
+    public PackedShape fromFixedPointDeltas() {
+        return PackedShape.fromFixedPointDeltas(deltas, 6);
+    }
+
+    @Benchmark
+    public byte[] encodeRoute() {
+        return CacheCodec.encodeRoutes(Collections.singletonList(route));
+    }
+
+    @Benchmark
+    public Object decodeRoute() {
+        return CacheCodec.decodeRoutes(encodedRoute);
+    }
+
+    // Chunks of about 1024 pixels at zoom level 17, as for the full-detail level.
+    @Benchmark
+    public PolylineChunks splitFullDetail() {
+        return PolylineChunks.split(shape, allIndices, vertexCount, 0.011, 0.015, 1000);
+    }
+
+    // A phone screen at zoom level 17 plus margins, around the middle of the route.
+    @Benchmark
+    public int findVisibleChunks() {
+        int middle = vertexCount / 2;
+        return chunks.findIntersecting(shape.latitude(middle) - 0.005, shape.longitude(middle) - 0.007,
+                shape.latitude(middle) + 0.005, shape.longitude(middle) + 0.007, visibleChunks);
+    }
+}
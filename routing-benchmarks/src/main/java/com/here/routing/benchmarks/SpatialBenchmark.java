@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.benchmarks;
+
+import com.here.routing.core.BidirectionalAStar;
+import com.here.routing.core.GridClusterer;
+import com.here.routing.core.GridSpatialIndex;
+import com.here.routing.core.RoadGraph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marker picking, clustering and offline path search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpatialBenchmark {
+
+    // Markers are spread over about 10 x 10 km.
+    private static final double AREA_SIZE_IN_DEGREES = 0.1;
+    private static final double SOUTH = 41.8;
+    private static final double WEST = -87.7;
+
+    @Param({"1000", "10000"})
+    public int markerCount;
+
+    private final Random random = new Random(5);
+    private GridSpatialIndex<Integer> markerIndex;
+    private double[] latitudes;
+    private double[] longitudes;
+    private RoadGraph graph;
+    private BidirectionalAStar pathFinder;
+
+    @Setup
+    public void setUp() {
+        markerIndex = new GridSpatialIndex<>(0.002);
+        latitudes = new double[markerCount];
+        longitudes = new double[markerCount];
+        for (int i = 0; i < markerCount; i++) {
+            latitudes[i] = SOUTH + random.nextDouble() * AREA_SIZE_IN_DEGREES;
+            longitudes[i] = WEST + random.nextDouble() * AREA_SIZE_IN_DEGREES;
+            markerIndex.insert(i, latitudes[i], longitudes[i]);
+        }
+        // 14,400 nodes, about a city district.
+        graph = BenchmarkData.gridGraph(120, 9);
+        pathFinder = new BidirectionalAStar(graph);
+    }
+
+    // A tap with the pick radius of 24 pixels at zoom level 14.
+    @Benchmark
+    public Integer findNearestMarker() {
+        return markerIndex.findNearest(SOUTH + random.nextDouble() * AREA_SIZE_IN_DEGREES,
+                WEST + random.nextDouble() * AREA_SIZE_IN_DEGREES, 170);
+    }
+
+    // New search results followed by the first render at a city zoom level.
+    @Benchmark
+    public List<GridClusterer.Cluster> clusterMarkers() {
+        GridClusterer clusterer = new GridClusterer(20, 64);
+        clusterer.setPoints(latitudes, longitudes, markerCount);
+        return clusterer.getClusters(12);
+    }
+
+    @Benchmark
+    public int nearestGraphNode() {
+        return graph.nearestNode(41.8 + random.nextDouble() * 0.1, -87.6 + random.nextDouble() * 0.1, 500);
+    }
+
+    @Benchmark
+    public BidirectionalAStar.Path findPath() {
+        int nodeCount = graph.getNodeCount();
+        return pathFinder.findPath(random.nextInt(nodeCount), random.nextInt(nodeCount));
+    }
+}
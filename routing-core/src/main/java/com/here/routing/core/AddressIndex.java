@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only address index in a memory-mapped file, searched by prefix of any word of the
+ * normalized address text, e.g. by house number or by street name. Nothing is decoded up
+ * front: lookups binary-search the sorted tables directly in the mapped file and only decode
+ * the entries they return.
+ *
+ * Every word of an address is a key: the address text from that word on. Keys are grouped by
+ * spatial cell, so that a search only looks at the cells of its box.
+ *
+ * File format, big-endian:
+ * <pre>
+ *   int magic "ADIX", int version, int keyCount, int cellSize in 10^-7 degrees, int cellCount
+ *   cellCount x (int spatial cell: row << 16 | column, int first key), ordered by cell
+ *   keyCount x (int offset of the address record, int start of the key in the normalized text),
+ *       ordered by cell, then by key
+ *   address records:
+ *     int latitude, int longitude in 10^-7 degrees
+ *     short normalized length, normalized text bytes (UTF-8)
+ *     short text length, address text bytes (UTF-8)
+ * </pre>
+ * Use {@link AddressIndexBuilder} to create the file.
+ */
+public final class AddressIndex implements Closeable {
+
+    public static final int MAGIC = 0x41444958;
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 20;
+    static final double COORDINATE_FACTOR = 1e7;
+    private static final int MAX_ROW = 0x7FFF;
+    private static final int MAX_COLUMN = 0xFFFF;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int keyCount;
+    private final double cellSizeInDegrees;
+    private final int cellCount;
+    private final int keyTableOffset;
+
+    private AddressIndex(RandomAccessFile file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an address index file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported address index version " + version);
+        }
+        keyCount = buffer.getInt(8);
+        cellSizeInDegrees = buffer.getInt(12) / COORDINATE_FACTOR;
+        cellCount = buffer.getInt(16);
+        keyTableOffset = HEADER_SIZE + 8 * cellCount;
+        if (keyCount < 0 || cellCount < 0 || cellSizeInDegrees <= 0
+                || keyTableOffset + 8L * keyCount > buffer.capacity()) {
+            throw new IOException("Corrupt address index header");
+        }
+    }
+
+    public static AddressIndex open(File indexFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return new AddressIndex(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of keys, one per word of every address.
+     */
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * Normalization applied to keys and queries: lower case, single spaces, no punctuation.
+     */
+    public static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N} ]", " ")
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Finds up to maxResults addresses inside the given box with a word that starts with the
+     * normalized query; the query may span several words. Addresses that start with the query
+     * come first, then those that match at an earlier word.
+     */
+    public List<GeocodedAddress> search(String query, double south, double west, double north, double east,
+                                        int maxResults) {
+        byte[] prefix = normalize(query).getBytes(StandardCharsets.UTF_8);
+        if (prefix.length == 0 || maxResults <= 0) {
+            return new ArrayList<>();
+        }
+
+        int firstRow = Math.max(cellIndex(south + 90), 0);
+        int lastRow = Math.min(cellIndex(north + 90), MAX_ROW);
+        int firstColumn = Math.max(cellIndex(west + 180), 0);
+        int lastColumn = Math.min(cellIndex(east + 180), MAX_COLUMN);
+
+        // Best key start per address, as an address matches once per matching word.
+        Map<Integer, Integer> matches = new HashMap<>();
+        if (lastRow - firstRow + 1 > cellCount) {
+            // A box larger than the indexed area: checking every cell is cheaper than every row.
+            for (int cell = 0; cell < cellCount; cell++) {
+                int cellKey = cellKeyAt(cell);
+                int row = cellKey >>> 16;
+                int column = cellKey & 0xFFFF;
+                if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
+                    collectMatches(cell, prefix, south, west, north, east, matches);
+                }
+            }
+        } else {
+            for (int row = firstRow; row <= lastRow; row++) {
+                int lastCell = (row << 16) | lastColumn;
+                for (int cell = lowerBoundCell((row << 16) | firstColumn);
+                     cell < cellCount && cellKeyAt(cell) <= lastCell; cell++) {
+                    collectMatches(cell, prefix, south, west, north, east, matches);
+                }
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(matches.entrySet());
+        Collections.sort(ranked, (a, b) -> a.getValue().equals(b.getValue())
+                ? Integer.compare(a.getKey(), b.getKey()) : Integer.compare(a.getValue(), b.getValue()));
+        List<GeocodedAddress> results = new ArrayList<>(Math.min(ranked.size(), maxResults));
+        for (int i = 0; i < ranked.size() && i < maxResults; i++) {
+            int recordOffset = ranked.get(i).getKey();
+            results.add(new GeocodedAddress(readText(recordOffset),
+                    buffer.getInt(recordOffset) / COORDINATE_FACTOR,
+                    buffer.getInt(recordOffset + 4) / COORDINATE_FACTOR));
+        }
+        return results;
+    }
+
+    // Adds the addresses of the cell inside the box with a key starting with the prefix, with
+    // their best key start.
+    private void collectMatches(int cell, byte[] prefix, double south, double west, double north, double east,
+                                Map<Integer, Integer> matches) {
+        int end = cell + 1 < cellCount ? firstKeyOfCell(cell + 1) : keyCount;
+        for (int key = lowerBound(prefix, firstKeyOfCell(cell), end);
+             key < end && keyStartsWith(key, prefix); key++) {
+            int recordOffset = recordOffset(key);
+            double latitude = buffer.getInt(recordOffset) / COORDINATE_FACTOR;
+            double longitude = buffer.getInt(recordOffset + 4) / COORDINATE_FACTOR;
+            if (latitude < south || latitude > north || longitude < west || longitude > east) {
+                continue;
+            }
+            Integer known = matches.get(recordOffset);
+            if (known == null || keyStart(key) < known) {
+                matches.put(recordOffset, keyStart(key));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int cellKeyAt(int cell) {
+        return buffer.getInt(HEADER_SIZE + 8 * cell);
+    }
+
+    private int firstKeyOfCell(int cell) {
+        return buffer.getInt(HEADER_SIZE + 8 * cell + 4);
+    }
+
+    private int recordOffset(int key) {
+        return buffer.getInt(keyTableOffset + 8 * key);
+    }
+
+    private int keyStart(int key) {
+        return buffer.getInt(keyTableOffset + 8 * key + 4);
+    }
+
+    // First cell in the directory that is not smaller than the given one.
+    private int lowerBoundCell(int cellKey) {
+        int low = 0;
+        int high = cellCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cellKeyAt(middle) < cellKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First key in [low, high) that is not smaller than the prefix.
+    private int lowerBound(byte[] prefix, int low, int high) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(middle, prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Unsigned byte comparison of the key with the given bytes.
+    private int compareKey(int key, byte[] bytes) {
+        int recordOffset = recordOffset(key);
+        int start = keyStart(key);
+        int keyLength = (buffer.getShort(recordOffset + 8) & 0xFFFF) - start;
+        int keyOffset = recordOffset + 10 + start;
+        int length = Math.min(keyLength, bytes.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (buffer.get(keyOffset + i) & 0xFF) - (bytes[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return keyLength - bytes.length;
+    }
+
+    private boolean keyStartsWith(int key, byte[] prefix) {
+        int recordOffset = recordOffset(key);
+        int start = keyStart(key);
+        int keyLength = (buffer.getShort(recordOffset + 8) & 0xFFFF) - start;
+        if (keyLength < prefix.length) {
+            return false;
+        }
+        int keyOffset = recordOffset + 10 + start;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(keyOffset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readText(int recordOffset) {
+        int normalizedLength = buffer.getShort(recordOffset + 8) & 0xFFFF;
+        int textOffset = recordOffset + 10 + normalizedLength;
+        int textLength = buffer.getShort(textOffset) & 0xFFFF;
+        byte[] text = new byte[textLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(textOffset + 2);
+        view.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    private int cellIndex(double shiftedDegrees) {
+        return (int) Math.floor(shiftedDegrees / cellSizeInDegrees);
+    }
+
+    static int cellKey(double latitude, double longitude, double cellSizeInDegrees) {
+        int row = (int) Math.floor((latitude + 90) / cellSizeInDegrees);
+        int column = (int) Math.floor((longitude + 180) / cellSizeInDegrees);
+        return (row << 16) | (column & 0xFFFF);
+    }
+}
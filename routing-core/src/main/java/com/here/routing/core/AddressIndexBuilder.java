@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link AddressIndex} file from a CSV dump with the columns
+ * address, latitude, longitude. A header line and fields in double quotes are supported.
+ *
+ * Runs on a desktop JVM, not in the app:
+ * <pre>
+ *   ./gradlew :routing-core:buildAddressIndex -Pcsv=addresses.csv -Pindex=address_index.bin
+ * </pre>
+ */
+public final class AddressIndexBuilder {
+
+    public static final double DEFAULT_CELL_SIZE_IN_DEGREES = 0.01;
+    // Key and text lengths are stored as unsigned shorts.
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+
+    private static final class Entry {
+        final byte[] key;
+        final byte[] text;
+        final int latitude;
+        final int longitude;
+
+        Entry(byte[] key, byte[] text, int latitude, int longitude) {
+            this.key = key;
+            this.text = text;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private static final class Key {
+        final Entry entry;
+        final int start;
+        final int cell;
+
+        Key(Entry entry, int start, int cell) {
+            this.entry = entry;
+            this.start = start;
+            this.cell = cell;
+        }
+    }
+
+    private final double cellSizeInDegrees;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public AddressIndexBuilder(double cellSizeInDegrees) {
+        if (cellSizeInDegrees <= 0 || 360 / cellSizeInDegrees > 0xFFFF) {
+            throw new IllegalArgumentException("cellSizeInDegrees out of range: " + cellSizeInDegrees);
+        }
+        this.cellSizeInDegrees = cellSizeInDegrees;
+    }
+
+    public void add(String addressText, double latitude, double longitude) {
+        byte[] key = AddressIndex.normalize(addressText).getBytes(StandardCharsets.UTF_8);
+        byte[] text = addressText.trim().getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > MAX_FIELD_LENGTH || text.length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("Address text empty or too long: " + addressText);
+        }
+        entries.add(new Entry(key, text,
+                (int) Math.round(latitude * AddressIndex.COORDINATE_FACTOR),
+                (int) Math.round(longitude * AddressIndex.COORDINATE_FACTOR)));
+    }
+
+    /**
+     * Reads all rows of the CSV. Rows that cannot be parsed are skipped.
+     *
+     * @return the number of skipped rows.
+     */
+    public int addCsv(Reader csv) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        int skipped = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<String> fields = splitCsvLine(line);
+            if (fields.size() < 3) {
+                skipped++;
+                continue;
+            }
+            try {
+                add(fields.get(0), Double.parseDouble(fields.get(1).trim()), Double.parseDouble(fields.get(2).trim()));
+            } catch (IllegalArgumentException e) {
+                // Includes NumberFormatException, e.g. for the header line.
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        // One key per word of every address: the normalized text from that word on.
+        List<Key> keys = new ArrayList<>();
+        for (Entry entry : entries) {
+            int cell = AddressIndex.cellKey(entry.latitude / AddressIndex.COORDINATE_FACTOR,
+                    entry.longitude / AddressIndex.COORDINATE_FACTOR, cellSizeInDegrees);
+            for (int start = 0; start < entry.key.length; start++) {
+                if (start == 0 || entry.key[start - 1] == ' ') {
+                    keys.add(new Key(entry, start, cell));
+                }
+            }
+        }
+        Key[] sorted = keys.toArray(new Key[0]);
+        Arrays.sort(sorted, (a, b) -> a.cell != b.cell
+                ? Integer.compare(a.cell, b.cell)
+                : compareUnsigned(a.entry.key, a.start, b.entry.key, b.start));
+
+        int cellCount = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i].cell != sorted[i - 1].cell) {
+                cellCount++;
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(AddressIndex.MAGIC);
+        out.writeInt(AddressIndex.VERSION);
+        out.writeInt(sorted.length);
+        out.writeInt((int) Math.round(cellSizeInDegrees * AddressIndex.COORDINATE_FACTOR));
+        out.writeInt(cellCount);
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i].cell != sorted[i - 1].cell) {
+                out.writeInt(sorted[i].cell);
+                out.writeInt(i);
+            }
+        }
+
+        Map<Entry, Integer> recordOffsets = new IdentityHashMap<>();
+        int offset = AddressIndex.HEADER_SIZE + 8 * cellCount + 8 * sorted.length;
+        for (Entry entry : entries) {
+            recordOffsets.put(entry, offset);
+            offset += 12 + entry.key.length + entry.text.length;
+        }
+        for (Key key : sorted) {
+            out.writeInt(recordOffsets.get(key.entry));
+            out.writeInt(key.start);
+        }
+        for (Entry entry : entries) {
+            out.writeInt(entry.latitude);
+            out.writeInt(entry.longitude);
+            out.writeShort(entry.key.length);
+            out.write(entry.key);
+            out.writeShort(entry.text.length);
+            out.write(entry.text);
+        }
+        out.flush();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Splits one CSV line into its fields. Fields may be quoted; quotes in them are doubled.
+     */
+    public static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Compares a[aStart..] with b[bStart..] as unsigned bytes.
+    private static int compareUnsigned(byte[] a, int aStart, byte[] b, int bStart) {
+        int aLength = a.length - aStart;
+        int bLength = b.length - bStart;
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int difference = (a[aStart + i] & 0xFF) - (b[bStart + i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AddressIndexBuilder <addresses.csv> <index file> [cellSizeInDegrees]");
+            System.exit(1);
+        }
+        double cellSizeInDegrees = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_CELL_SIZE_IN_DEGREES;
+        AddressIndexBuilder builder = new AddressIndexBuilder(cellSizeInDegrees);
+        int skipped;
+        try (Reader csv = new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8)) {
+            skipped = builder.addCsv(csv);
+        }
+        try (OutputStream out = new FileOutputStream(args[1])) {
+            builder.write(out);
+        }
+        System.out.println("Indexed " + builder.size() + " addresses, skipped " + skipped + " rows.");
+    }
+}
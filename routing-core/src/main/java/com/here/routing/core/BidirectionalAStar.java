@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Arrays;
+
+/**
+ * Fastest path search on a {@link RoadGraph} with bidirectional A*.
+ *
+ * Both directions use the average of the forward and backward straight-line estimates as
+ * potential (Ikeda et al.), which keeps the potentials consistent, so the search may stop
+ * as soon as the smallest keys of both queues sum up to the best path found so far.
+ *
+ * The working arrays are sized to the graph once and reset lazily per query, so a search
+ * only touches the nodes it visits. Instances are not thread-safe.
+ */
+public final class BidirectionalAStar {
+
+    /**
+     * A path as node sequence plus its totals.
+     */
+    public static final class Path {
+        public final int[] nodes;
+        public final double lengthInMeters;
+        public final double travelTimeInSeconds;
+
+        Path(int[] nodes, double lengthInMeters, double travelTimeInSeconds) {
+            this.nodes = nodes;
+            this.lengthInMeters = lengthInMeters;
+            this.travelTimeInSeconds = travelTimeInSeconds;
+        }
+    }
+
+    private static final int FORWARD = 0;
+    private static final int BACKWARD = 1;
+
+    private final RoadGraph graph;
+    // Straight-line estimates are scaled down a little, so that rounding never makes them overestimate.
+    private final double secondsPerMeter;
+
+    private final double[][] distance = new double[2][];
+    // Edge through which a node was reached; -1 for the search origins.
+    private final int[][] parentEdge = new int[2][];
+    private final int[][] visitedInQuery = new int[2][];
+    private final boolean[][] settled = new boolean[2][];
+    private final MinHeap[] queues = new MinHeap[2];
+    private int query;
+    // Best path found so far in the current query, and the node where both searches meet on it.
+    private double best;
+    private int meetingNode;
+
+    private double sourceLatitude;
+    private double sourceLongitude;
+    private double targetLatitude;
+    private double targetLongitude;
+
+    public BidirectionalAStar(RoadGraph graph) {
+        this.graph = graph;
+        this.secondsPerMeter = 0.999 / graph.getMaxSpeedInMetersPerSecond();
+        int nodeCount = graph.getNodeCount();
+        for (int direction = FORWARD; direction <= BACKWARD; direction++) {
+            distance[direction] = new double[nodeCount];
+            parentEdge[direction] = new int[nodeCount];
+            visitedInQuery[direction] = new int[nodeCount];
+            settled[direction] = new boolean[nodeCount];
+            queues[direction] = new MinHeap(nodeCount);
+        }
+    }
+
+    /**
+     * @return the fastest path from source to target, or null if target is unreachable.
+     */
+    public Path findPath(int source, int target) {
+        query++;
+        sourceLatitude = graph.latitude(source);
+        sourceLongitude = graph.longitude(source);
+        targetLatitude = graph.latitude(target);
+        targetLongitude = graph.longitude(target);
+        queues[FORWARD].clear();
+        queues[BACKWARD].clear();
+
+        best = Double.POSITIVE_INFINITY;
+        meetingNode = -1;
+        reach(FORWARD, source, 0, -1);
+        reach(BACKWARD, target, 0, -1);
+
+        while (!queues[FORWARD].isEmpty() && !queues[BACKWARD].isEmpty()) {
+            if (queues[FORWARD].minKey() + queues[BACKWARD].minKey() >= best) {
+                break;
+            }
+            int direction = queues[FORWARD].size() <= queues[BACKWARD].size() ? FORWARD : BACKWARD;
+            int node = queues[direction].poll();
+            settled[direction][node] = true;
+            relaxEdges(direction, node);
+        }
+
+        if (meetingNode == -1) {
+            return null;
+        }
+        return buildPath(meetingNode);
+    }
+
+    // Called whenever the distance of a node improves in one direction.
+    private void updateBest(int direction, int node) {
+        int other = 1 - direction;
+        if (isVisited(other, node)) {
+            double total = distance[direction][node] + distance[other][node];
+            if (total < best) {
+                best = total;
+                meetingNode = node;
+            }
+        }
+    }
+
+    private void relaxEdges(int direction, int node) {
+        if (direction == FORWARD) {
+            for (int edge = graph.firstEdge(node); edge < graph.endEdge(node); edge++) {
+                relax(FORWARD, graph.edgeTarget(edge), distance[FORWARD][node] + graph.edgeTimeInSeconds(edge), edge);
+            }
+        } else {
+            for (int index = graph.firstInEdge(node); index < graph.endInEdge(node); index++) {
+                int edge = graph.inEdge(index);
+                relax(BACKWARD, graph.edgeSource(edge), distance[BACKWARD][node] + graph.edgeTimeInSeconds(edge), edge);
+            }
+        }
+    }
+
+    private void relax(int direction, int node, double newDistance, int viaEdge) {
+        if (!isVisited(direction, node)) {
+            reach(direction, node, newDistance, viaEdge);
+        } else if (!settled[direction][node] && newDistance < distance[direction][node]) {
+            distance[direction][node] = newDistance;
+            parentEdge[direction][node] = viaEdge;
+            queues[direction].decreaseKey(node, newDistance + potential(direction, node));
+            updateBest(direction, node);
+        }
+    }
+
+    private void reach(int direction, int node, double nodeDistance, int viaEdge) {
+        visitedInQuery[direction][node] = query;
+        settled[direction][node] = false;
+        distance[direction][node] = nodeDistance;
+        parentEdge[direction][node] = viaEdge;
+        queues[direction].add(node, nodeDistance + potential(direction, node));
+        updateBest(direction, node);
+    }
+
+    private boolean isVisited(int direction, int node) {
+        return visitedInQuery[direction][node] == query;
+    }
+
+    private double potential(int direction, int node) {
+        double latitude = graph.latitude(node);
+        double longitude = graph.longitude(node);
+        double toTarget = PackedShape.distanceInMeters(latitude, longitude, targetLatitude, targetLongitude);
+        double fromSource = PackedShape.distanceInMeters(latitude, longitude, sourceLatitude, sourceLongitude);
+        double forwardPotential = (toTarget - fromSource) * secondsPerMeter / 2;
+        return direction == FORWARD ? forwardPotential : -forwardPotential;
+    }
+
+    private Path buildPath(int meetingNode) {
+        int forwardLength = 0;
+        for (int node = meetingNode; parentEdge[FORWARD][node] != -1;
+             node = graph.edgeSource(parentEdge[FORWARD][node])) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for (int node = meetingNode; parentEdge[BACKWARD][node] != -1;
+             node = graph.edgeTarget(parentEdge[BACKWARD][node])) {
+            backwardLength++;
+        }
+
+        int[] nodes = new int[forwardLength + backwardLength + 1];
+        double lengthInMeters = 0;
+        double travelTimeInSeconds = 0;
+        int position = forwardLength;
+        nodes[position] = meetingNode;
+        for (int node = meetingNode; parentEdge[FORWARD][node] != -1; ) {
+            int edge = parentEdge[FORWARD][node];
+            lengthInMeters += graph.edgeLengthInMeters(edge);
+            travelTimeInSeconds += graph.edgeTimeInSeconds(edge);
+            node = graph.edgeSource(edge);
+            nodes[--position] = node;
+        }
+        position = forwardLength;
+        for (int node = meetingNode; parentEdge[BACKWARD][node] != -1; ) {
+            int edge = parentEdge[BACKWARD][node];
+            lengthInMeters += graph.edgeLengthInMeters(edge);
+            travelTimeInSeconds += graph.edgeTimeInSeconds(edge);
+            node = graph.edgeTarget(edge);
+            nodes[++position] = node;
+        }
+        return new Path(nodes, lengthInMeters, travelTimeInSeconds);
+    }
+
+    /**
+     * Binary min-heap over node ids with decrease-key, backed by primitive arrays.
+     */
+    private static final class MinHeap {
+        private final int[] heap;
+        private final double[] keys;
+        // Position of each node in heap, valid only while the node is contained.
+        private final int[] positions;
+        private int size;
+
+        MinHeap(int capacity) {
+            heap = new int[capacity];
+            keys = new double[capacity];
+            positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                positions[heap[i]] = -1;
+            }
+            size = 0;
+        }
+
+        double minKey() {
+            return keys[heap[0]];
+        }
+
+        void add(int node, double key) {
+            keys[node] = key;
+            heap[size] = node;
+            positions[node] = size;
+            siftUp(size++);
+        }
+
+        void decreaseKey(int node, double key) {
+            keys[node] = key;
+            siftUp(positions[node]);
+        }
+
+        int poll() {
+            int min = heap[0];
+            positions[min] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                siftDown(0);
+            }
+            return min;
+        }
+
+        private void siftUp(int index) {
+            int node = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (keys[heap[parent]] <= keys[node]) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                positions[heap[index]] = index;
+                index = parent;
+            }
+            heap[index] = node;
+            positions[node] = index;
+        }
+
+        private void siftDown(int index) {
+            int node = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                    child++;
+                }
+                if (keys[node] <= keys[heap[child]]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                positions[heap[index]] = index;
+                index = child;
+            }
+            heap[index] = node;
+            positions[node] = index;
+        }
+    }
+}
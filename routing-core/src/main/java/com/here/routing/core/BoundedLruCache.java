@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least-recently-used cache bounded by the summed weight of its entries.
+ * The weight of an entry is given by a {@link Weigher}, e.g. an estimate of its size in bytes.
+ * Optionally, entries expire a fixed time after they were written.
+ */
+public class BoundedLruCache<K, V> {
+
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final int weight;
+        final long writeTimeNanos;
+
+        Entry(V value, int weight, long writeTimeNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.writeTimeNanos = writeTimeNanos;
+        }
+    }
+
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Weigher<K, V> weigher;
+    private final long maxWeight;
+    private final long expireAfterWriteNanos;
+    private long totalWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BoundedLruCache(long maxWeight, Weigher<K, V> weigher) {
+        this(maxWeight, 0, weigher);
+    }
+
+    /**
+     * @param expireAfterWriteMillis time after which an entry is no longer returned,
+     *                               or 0 to keep entries until they are evicted.
+     */
+    public BoundedLruCache(long maxWeight, long expireAfterWriteMillis, Weigher<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        if (expireAfterWriteMillis < 0) {
+            throw new IllegalArgumentException("expireAfterWriteMillis must not be negative: " + expireAfterWriteMillis);
+        }
+        this.maxWeight = maxWeight;
+        this.expireAfterWriteNanos = expireAfterWriteMillis * 1_000_000L;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            totalWeight -= entry.weight;
+            evictionCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight > maxWeight) {
+            // Never admit an entry that alone would exceed the budget.
+            remove(key);
+            return;
+        }
+
+        Entry<V> previous = entries.put(key, new Entry<>(value, weight, System.nanoTime()));
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weight;
+        trimToBudget();
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> previous = entries.remove(key);
+        if (previous == null) {
+            return null;
+        }
+        totalWeight -= previous.weight;
+        return previous.value;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private boolean isExpired(Entry<V> entry, long nowNanos) {
+        return expireAfterWriteNanos > 0 && nowNanos - entry.writeTimeNanos >= expireAfterWriteNanos;
+    }
+
+    // Evicts from the least recently used end while over budget, and drops the expired entries
+    // found there. Stops at the first live entry once within budget, so a put stays O(1)
+    // amortized; expired entries further in are dropped when they are read or reach the end.
+    private void trimToBudget() {
+        long nowNanos = System.nanoTime();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (totalWeight <= maxWeight && !isExpired(entry, nowNanos)) {
+                break;
+            }
+            iterator.remove();
+            totalWeight -= entry.weight;
+            evictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BoundedLruCache[size=" + entries.size()
+                + ", weight=" + totalWeight + "/" + maxWeight
+                + ", hits=" + hitCount
+                + ", misses=" + missCount
+                + ", evictions=" + evictionCount + "]";
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encodings of routes and geocoding results for the {@link DiskCache}.
+ * Integers are varints, coordinates zigzag-encoded deltas to the previous coordinate in
+ * units of 10^-6 degrees (about 10 cm), so a typical route vertex takes two to four bytes.
+ *
+ * Decoding returns null for data that cannot be read, e.g. written by a different version.
+ */
+public final class CacheCodec {
+
+    // Increment when an encoding changes; older values then decode to null.
+    private static final int FORMAT_VERSION = 1;
+    private static final int COORDINATE_PRECISION = 6;
+    private static final double COORDINATE_FACTOR = 1e6;
+
+    private CacheCodec() {
+    }
+
+    public static byte[] encodeRoutes(List<RouteResult> routes) {
+        Writer writer = new Writer();
+        writer.writeVarint(FORMAT_VERSION);
+        writer.writeVarint(routes.size());
+        for (RouteResult route : routes) {
+            writer.writeVarint(route.getLengthInMeters());
+            writer.writeVarint(route.getTravelTimeInSeconds());
+
+            int[] deltas = route.getShape().toFixedPointDeltas(COORDINATE_PRECISION);
+            writer.writeVarint(deltas.length / 2);
+            for (int delta : deltas) {
+                writer.writeSignedVarint(delta);
+            }
+
+            List<List<RouteManeuver>> legManeuvers = route.getLegManeuvers();
+            writer.writeVarint(legManeuvers.size());
+            long previousLatitude = 0;
+            long previousLongitude = 0;
+            for (List<RouteManeuver> maneuvers : legManeuvers) {
+                writer.writeVarint(maneuvers.size());
+                for (RouteManeuver maneuver : maneuvers) {
+                    writer.writeString(maneuver.text);
+                    writer.writeString(maneuver.action);
+                    long latitude = Math.round(maneuver.latitude * COORDINATE_FACTOR);
+                    long longitude = Math.round(maneuver.longitude * COORDINATE_FACTOR);
+                    writer.writeSignedVarint(latitude - previousLatitude);
+                    writer.writeSignedVarint(longitude - previousLongitude);
+                    previousLatitude = latitude;
+                    previousLongitude = longitude;
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<RouteResult> decodeRoutes(byte[] data) {
+        try {
+            ByteBuffer reader = ByteBuffer.wrap(data);
+            if (getVarint(reader) != FORMAT_VERSION) {
+                return null;
+            }
+            int routeCount = getVarint(reader);
+            List<RouteResult> routes = new ArrayList<>(routeCount);
+            for (int r = 0; r < routeCount; r++) {
+                int lengthInMeters = getVarint(reader);
+                int travelTimeInSeconds = getVarint(reader);
+
+                int[] deltas = new int[2 * getVarint(reader)];
+                for (int i = 0; i < deltas.length; i++) {
+                    deltas[i] = (int) getSignedVarint(reader);
+                }
+                PackedShape shape = PackedShape.fromFixedPointDeltas(deltas, COORDINATE_PRECISION);
+
+                int legCount = getVarint(reader);
+                List<List<RouteManeuver>> legManeuvers = new ArrayList<>(legCount);
+                long latitude = 0;
+                long longitude = 0;
+                for (int leg = 0; leg < legCount; leg++) {
+                    int maneuverCount = getVarint(reader);
+                    List<RouteManeuver> maneuvers = new ArrayList<>(maneuverCount);
+                    for (int m = 0; m < maneuverCount; m++) {
+                        String text = getString(reader);
+                        String action = getString(reader);
+                        latitude += getSignedVarint(reader);
+                        longitude += getSignedVarint(reader);
+                        maneuvers.add(new RouteManeuver(text, action,
+                                latitude / COORDINATE_FACTOR, longitude / COORDINATE_FACTOR));
+                    }
+                    legManeuvers.add(maneuvers);
+                }
+                routes.add(new RouteResult(shape, lengthInMeters, travelTimeInSeconds, legManeuvers));
+            }
+            return routes;
+        } catch (RuntimeException e) {
+            // Truncated or otherwise unreadable data.
+            return null;
+        }
+    }
+
+    public static byte[] encodeAddresses(List<GeocodedAddress> addresses) {
+        Writer writer = new Writer();
+        writer.writeVarint(FORMAT_VERSION);
+        writer.writeVarint(addresses.size());
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (GeocodedAddress address : addresses) {
+            writer.writeString(address.addressText);
+            long latitude = Math.round(address.latitude * COORDINATE_FACTOR);
+            long longitude = Math.round(address.longitude * COORDINATE_FACTOR);
+            writer.writeSignedVarint(latitude - previousLatitude);
+            writer.writeSignedVarint(longitude - previousLongitude);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<GeocodedAddress> decodeAddresses(byte[] data) {
+        try {
+            ByteBuffer reader = ByteBuffer.wrap(data);
+            if (getVarint(reader) != FORMAT_VERSION) {
+                return null;
+            }
+            int count = getVarint(reader);
+            List<GeocodedAddress> addresses = new ArrayList<>(count);
+            long latitude = 0;
+            long longitude = 0;
+            for (int i = 0; i < count; i++) {
+                String addressText = getString(reader);
+                latitude += getSignedVarint(reader);
+                longitude += getSignedVarint(reader);
+                addresses.add(new GeocodedAddress(addressText,
+                        latitude / COORDINATE_FACTOR, longitude / COORDINATE_FACTOR));
+            }
+            return addresses;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) {
+        return (int) getVarLong(buffer);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long getSignedVarint(ByteBuffer buffer) {
+        long zigzag = getVarLong(buffer);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarint(buffer);
+        if (length == 0) {
+            return null;
+        }
+        // Stored with one extra, so that null and "" can be told apart.
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(256);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent key-value cache in a single append-only file. Values are opaque byte arrays,
+ * see {@link CacheCodec} for the encodings in use.
+ *
+ * File format, big-endian:
+ * <pre>
+ *   int magic "RDCF", int version, long synced length
+ *   records: int payload length, int CRC32 of the payload,
+ *            payload: long write time in milliseconds, varint key length, key (UTF-8), value
+ * </pre>
+ * A put only appends, so a crash can at worst leave a torn record at the end of the file.
+ * Records up to the synced length were forced to disk before the header was updated and are
+ * trusted on open: warm-up reads only their lengths and keys from a memory-mapped view.
+ * Records after it are checked against their CRC, and the file is cut at the first bad one.
+ *
+ * When the file grows beyond its size limit, the least recently used entries are dropped and
+ * the rest is written to a new file that atomically replaces the old one.
+ *
+ * Instances are thread-safe.
+ */
+public final class DiskCache implements Closeable {
+
+    private static final int MAGIC = 0x52444346;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    // After a compaction the file holds at most this share of the size limit.
+    private static final double COMPACTION_TARGET_RATIO = 0.75;
+
+    // Where a record is in the file.
+    private static final class Location {
+        final long offset;
+        final int payloadLength;
+        final int valueOffset;
+        final long writeTimeMillis;
+
+        Location(long offset, int payloadLength, int valueOffset, long writeTimeMillis) {
+            this.offset = offset;
+            this.payloadLength = payloadLength;
+            this.valueOffset = valueOffset;
+            this.writeTimeMillis = writeTimeMillis;
+        }
+
+        int recordSize() {
+            return RECORD_HEADER_SIZE + payloadLength;
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+    // Access-ordered, so that iteration starts with the least recently used key.
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>(64, 0.75f, true);
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mappedRecords;
+    private long fileLength;
+    private long syncedLength;
+    private long liveBytes;
+
+    private DiskCache(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens the cache file, creating it if needed. A file of an unknown format or version is
+     * discarded: its content is only a cache.
+     */
+    public static DiskCache open(File file, long maxBytes) throws IOException {
+        DiskCache diskCache = new DiskCache(file, maxBytes);
+        diskCache.load();
+        return diskCache;
+    }
+
+    public synchronized byte[] get(String key) {
+        return get(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the value, or null if there is none or it was written more than maxAgeMillis ago.
+     */
+    public synchronized byte[] get(String key, long maxAgeMillis) {
+        Location location = index.get(key);
+        if (location == null || channel == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - location.writeTimeMillis > maxAgeMillis) {
+            remove(key, location);
+            return null;
+        }
+        try {
+            byte[] payload = readPayload(location);
+            if (payload == null) {
+                remove(key, location);
+                return null;
+            }
+            byte[] value = new byte[payload.length - location.valueOffset];
+            System.arraycopy(payload, location.valueOffset, value, 0, value.length);
+            return value;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, byte[] value) throws IOException {
+        if (channel == null) {
+            throw new IOException("DiskCache is closed");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long writeTimeMillis = System.currentTimeMillis();
+        int valueOffset = 8 + CacheCodec.varintSize(keyBytes.length) + keyBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + valueOffset + value.length);
+        record.putInt(valueOffset + value.length);
+        record.putInt(0);
+        record.putLong(writeTimeMillis);
+        CacheCodec.putVarint(record, keyBytes.length);
+        record.put(keyBytes);
+        record.put(value);
+        crc.reset();
+        crc.update(record.array(), RECORD_HEADER_SIZE, record.capacity() - RECORD_HEADER_SIZE);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        long offset = fileLength;
+        writeFully(channel, record, offset);
+        fileLength += record.capacity();
+
+        Location previous = index.put(key,
+                new Location(offset, valueOffset + value.length, valueOffset, writeTimeMillis));
+        if (previous != null) {
+            liveBytes -= previous.recordSize();
+        }
+        liveBytes += record.capacity();
+
+        if (fileLength > maxBytes) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * Forces all records to disk, so that the next open does not need to verify them.
+     */
+    public synchronized void sync() throws IOException {
+        if (channel == null || syncedLength == fileLength) {
+            return;
+        }
+        channel.force(false);
+        ByteBuffer length = ByteBuffer.allocate(8);
+        length.putLong(0, fileLength);
+        writeFully(channel, length, 8);
+        channel.force(false);
+        syncedLength = fileLength;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        sync();
+        randomAccessFile.close();
+        randomAccessFile = null;
+        channel = null;
+        mappedRecords = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DiskCache{entries=" + index.size() + ", liveBytes=" + liveBytes
+                + ", fileLength=" + fileLength + "}";
+    }
+
+    private void load() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        fileLength = channel.size();
+        if (fileLength < HEADER_SIZE || !hasValidHeader()) {
+            writeEmptyFile(channel);
+            fileLength = HEADER_SIZE;
+            syncedLength = HEADER_SIZE;
+            return;
+        }
+
+        mappedRecords = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+        syncedLength = Math.min(mappedRecords.getLong(8), fileLength);
+        long offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= fileLength) {
+            int payloadLength = mappedRecords.getInt((int) offset);
+            if (payloadLength < 9 || offset + RECORD_HEADER_SIZE + payloadLength > fileLength) {
+                break;
+            }
+            if (offset >= syncedLength && !hasValidChecksum(offset, payloadLength)) {
+                break;
+            }
+            int position = (int) offset + RECORD_HEADER_SIZE;
+            long writeTimeMillis = mappedRecords.getLong(position);
+            ByteBuffer view = mappedRecords.duplicate();
+            view.position(position + 8);
+            int keyLength = CacheCodec.getVarint(view);
+            if (keyLength < 0 || view.position() + keyLength > position + payloadLength) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            view.get(keyBytes);
+            int valueOffset = view.position() - position;
+
+            Location location = new Location(offset, payloadLength, valueOffset, writeTimeMillis);
+            Location previous = index.put(new String(keyBytes, StandardCharsets.UTF_8), location);
+            if (previous != null) {
+                liveBytes -= previous.recordSize();
+            }
+            liveBytes += location.recordSize();
+            offset += location.recordSize();
+        }
+
+        if (offset < fileLength) {
+            // Cut off the torn or corrupt tail, so that new records follow the last good one.
+            channel.truncate(offset);
+            fileLength = offset;
+            mappedRecords = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+        }
+        syncedLength = Math.min(syncedLength, fileLength);
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    private boolean hasValidChecksum(long offset, int payloadLength) {
+        byte[] payload = new byte[payloadLength];
+        ByteBuffer view = mappedRecords.duplicate();
+        view.position((int) offset + RECORD_HEADER_SIZE);
+        view.get(payload);
+        crc.reset();
+        crc.update(payload, 0, payloadLength);
+        return (int) crc.getValue() == mappedRecords.getInt((int) offset + 4);
+    }
+
+    // Returns the payload, or null if it does not match its checksum.
+    private byte[] readPayload(Location location) throws IOException {
+        byte[] payload = new byte[location.payloadLength];
+        int storedCrc;
+        long payloadOffset = location.offset + RECORD_HEADER_SIZE;
+        if (mappedRecords != null && payloadOffset + location.payloadLength <= mappedRecords.capacity()) {
+            ByteBuffer view = mappedRecords.duplicate();
+            view.position((int) payloadOffset);
+            view.get(payload);
+            storedCrc = mappedRecords.getInt((int) location.offset + 4);
+        } else {
+            // Appended after the file was mapped.
+            ByteBuffer record = ByteBuffer.allocate(location.recordSize());
+            readFully(channel, record, location.offset);
+            storedCrc = record.getInt(4);
+            record.position(RECORD_HEADER_SIZE);
+            record.get(payload);
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue() == storedCrc ? payload : null;
+    }
+
+    private void remove(String key, Location location) {
+        index.remove(key);
+        liveBytes -= location.recordSize();
+    }
+
+    // Drops least recently used entries and rewrites the remaining ones into a new file. The
+    // index only changes once the new file has replaced the old one, so a failed attempt loses
+    // nothing.
+    private void compact() throws IOException {
+        long targetBytes = (long) (maxBytes * COMPACTION_TARGET_RATIO) - HEADER_SIZE;
+        long keptBytes = liveBytes;
+        Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+        while (keptBytes > targetBytes && iterator.hasNext()) {
+            keptBytes -= iterator.next().getValue().recordSize();
+        }
+
+        File compactedFile = new File(file.getPath() + ".compact");
+        LinkedHashMap<String, Location> compactedIndex = new LinkedHashMap<>(64, 0.75f, true);
+        long offset = HEADER_SIZE;
+        try (RandomAccessFile compacted = new RandomAccessFile(compactedFile, "rw")) {
+            FileChannel compactedChannel = compacted.getChannel();
+            compactedChannel.truncate(0);
+            writeEmptyFile(compactedChannel);
+            // Oldest first, so that the access order survives a reload.
+            while (iterator.hasNext()) {
+                Map.Entry<String, Location> entry = iterator.next();
+                Location location = entry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(location.recordSize());
+                readFully(channel, record, location.offset);
+                record.flip();
+                writeFully(compactedChannel, record, offset);
+                compactedIndex.put(entry.getKey(), new Location(offset, location.payloadLength,
+                        location.valueOffset, location.writeTimeMillis));
+                offset += location.recordSize();
+            }
+            compactedChannel.force(false);
+            ByteBuffer length = ByteBuffer.allocate(8);
+            length.putLong(0, offset);
+            writeFully(compactedChannel, length, 8);
+            compactedChannel.force(false);
+        }
+
+        randomAccessFile.close();
+        boolean replaced = compactedFile.renameTo(file);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        if (!replaced) {
+            // The old file and the index are unchanged; the next put tries again.
+            compactedFile.delete();
+            throw new IOException("Could not replace " + file + " with the compacted cache");
+        }
+        index.clear();
+        index.putAll(compactedIndex);
+        liveBytes = keptBytes;
+        fileLength = offset;
+        syncedLength = offset;
+        mappedRecords = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+    }
+
+    private static void writeEmptyFile(FileChannel channel) throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(HEADER_SIZE);
+        header.flip();
+        writeFully(channel, header, 0);
+        channel.force(false);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of cache file");
+            }
+            position += read;
+        }
+    }
+}
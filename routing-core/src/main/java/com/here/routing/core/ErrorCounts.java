@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counters, one per constant of an error enum.
+ */
+public final class ErrorCounts<E extends Enum<E>> {
+
+    private final Class<E> errorType;
+    private final AtomicLongArray counts;
+
+    public ErrorCounts(Class<E> errorType) {
+        this.errorType = errorType;
+        this.counts = new AtomicLongArray(errorType.getEnumConstants().length);
+    }
+
+    public void increment(E error) {
+        counts.incrementAndGet(error.ordinal());
+    }
+
+    public long get(E error) {
+        return counts.get(error.ordinal());
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the errors that occurred at least once, with their counts.
+     */
+    public Map<E, Long> snapshot() {
+        Map<E, Long> snapshot = new EnumMap<>(errorType);
+        for (E error : errorType.getEnumConstants()) {
+            long count = counts.get(error.ordinal());
+            if (count > 0) {
+                snapshot.put(error, count);
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+}
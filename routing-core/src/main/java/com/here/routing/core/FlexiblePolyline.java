@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text encoding of route shapes in the HERE flexible polyline format, so that shapes can be
+ * stored or shared as short URL-safe strings: coordinates are rounded to a chosen number of
+ * decimal places, and each vertex is stored as the zigzag-encoded difference to the previous
+ * one, in varints of 5-bit chunks written as base64url characters. Shapes with a third
+ * dimension can be decoded; it is skipped.
+ *
+ * Maneuver lists are encoded with the same alphabet and varints. This part is not in the
+ * HERE specification.
+ *
+ * The {@link Encoder} and {@link Decoder} work vertex by vertex without allocating, so shapes
+ * can be streamed. Malformed input makes decoding throw IllegalArgumentException.
+ */
+public final class FlexiblePolyline {
+
+    public static final int FORMAT_VERSION = 1;
+    public static final int MAX_PRECISION = 15;
+    private static final int MANEUVER_FORMAT_VERSION = 1;
+
+    private static final char[] ENCODING_TABLE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, -1);
+        for (int i = 0; i < ENCODING_TABLE.length; i++) {
+            DECODING_TABLE[ENCODING_TABLE[i]] = i;
+        }
+    }
+
+    private FlexiblePolyline() {
+    }
+
+    /**
+     * Appends the vertices of a shape to a StringBuilder, one at a time.
+     */
+    public static final class Encoder {
+        private final StringBuilder out;
+        private final double factor;
+        private long previousLatitude;
+        private long previousLongitude;
+
+        /**
+         * Writes the header right away.
+         *
+         * @param precision decimal places kept; 5 is about 1 m, 6 about 10 cm.
+         */
+        public Encoder(int precision, StringBuilder out) {
+            if (precision < 0 || precision > MAX_PRECISION) {
+                throw new IllegalArgumentException("Precision out of range: " + precision);
+            }
+            this.out = out;
+            factor = Math.pow(10, precision);
+            appendUnsigned(out, FORMAT_VERSION);
+            // No third dimension: its type and precision bits stay zero.
+            appendUnsigned(out, precision);
+        }
+
+        public void add(double latitude, double longitude) {
+            long roundedLatitude = round(latitude, factor);
+            long roundedLongitude = round(longitude, factor);
+            appendSigned(out, roundedLatitude - previousLatitude);
+            appendSigned(out, roundedLongitude - previousLongitude);
+            previousLatitude = roundedLatitude;
+            previousLongitude = roundedLongitude;
+        }
+    }
+
+    /**
+     * Reads the vertices of an encoded shape one at a time.
+     */
+    public static final class Decoder {
+        private final CharSequence encoded;
+        private final int precision;
+        private final double factor;
+        private final boolean thirdDimension;
+        private final int[] cursor = {0};
+        private long latitude;
+        private long longitude;
+
+        public Decoder(CharSequence encoded) {
+            this.encoded = encoded;
+            long version = readUnsigned(encoded, cursor);
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported format version: " + version);
+            }
+            long header = readUnsigned(encoded, cursor);
+            precision = (int) (header & 0xF);
+            thirdDimension = ((header >> 4) & 0x7) != 0;
+            factor = Math.pow(10, precision);
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        /**
+         * Moves to the next vertex.
+         *
+         * @return false if there are no more vertices.
+         */
+        public boolean next() {
+            if (cursor[0] >= encoded.length()) {
+                return false;
+            }
+            latitude += readSigned(encoded, cursor);
+            longitude += readSigned(encoded, cursor);
+            if (thirdDimension) {
+                readSigned(encoded, cursor);
+            }
+            return true;
+        }
+
+        public double latitude() {
+            return latitude / factor;
+        }
+
+        public double longitude() {
+            return longitude / factor;
+        }
+    }
+
+    public static String encode(PackedShape shape, int precision) {
+        // A vertex of a typical route takes about six characters.
+        StringBuilder out = new StringBuilder(8 + 6 * shape.size());
+        Encoder encoder = new Encoder(precision, out);
+        for (int i = 0; i < shape.size(); i++) {
+            encoder.add(shape.latitude(i), shape.longitude(i));
+        }
+        return out.toString();
+    }
+
+    public static PackedShape decode(CharSequence encoded) {
+        Decoder decoder = new Decoder(encoded);
+        // Vertices take at least two characters, so this never needs to grow.
+        int capacity = encoded.length() / 2 + 1;
+        double[] latitudes = new double[capacity];
+        double[] longitudes = new double[capacity];
+        int size = 0;
+        while (decoder.next()) {
+            latitudes[size] = decoder.latitude();
+            longitudes[size] = decoder.longitude();
+            size++;
+        }
+        return new PackedShape(Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size), size);
+    }
+
+    /**
+     * Encodes maneuvers with coordinates rounded to the given precision. Action names are
+     * stored once and referenced by index, as a route uses only a few of them.
+     */
+    public static String encodeManeuvers(List<RouteManeuver> maneuvers, int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision out of range: " + precision);
+        }
+        Map<String, Integer> actionIndices = new HashMap<>();
+        List<String> actions = new ArrayList<>();
+        for (RouteManeuver maneuver : maneuvers) {
+            if (maneuver.action != null && !actionIndices.containsKey(maneuver.action)) {
+                actionIndices.put(maneuver.action, actions.size());
+                actions.add(maneuver.action);
+            }
+        }
+
+        StringBuilder out = new StringBuilder(16 + 32 * maneuvers.size());
+        appendUnsigned(out, MANEUVER_FORMAT_VERSION);
+        appendUnsigned(out, precision);
+        appendUnsigned(out, actions.size());
+        for (String action : actions) {
+            appendString(out, action);
+        }
+        appendUnsigned(out, maneuvers.size());
+        double factor = Math.pow(10, precision);
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (RouteManeuver maneuver : maneuvers) {
+            // Index plus one, so that zero can stand for no action.
+            appendUnsigned(out, maneuver.action == null ? 0 : actionIndices.get(maneuver.action) + 1);
+            appendString(out, maneuver.text);
+            long latitude = round(maneuver.latitude, factor);
+            long longitude = round(maneuver.longitude, factor);
+            appendSigned(out, latitude - previousLatitude);
+            appendSigned(out, longitude - previousLongitude);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return out.toString();
+    }
+
+    public static List<RouteManeuver> decodeManeuvers(CharSequence encoded) {
+        int[] cursor = {0};
+        long version = readUnsigned(encoded, cursor);
+        if (version != MANEUVER_FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported maneuver format version: " + version);
+        }
+        double factor = Math.pow(10, checkedCount(readUnsigned(encoded, cursor), MAX_PRECISION));
+        String[] actions = new String[checkedCount(readUnsigned(encoded, cursor), encoded.length())];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = readString(encoded, cursor);
+        }
+        int count = checkedCount(readUnsigned(encoded, cursor), encoded.length());
+        List<RouteManeuver> maneuvers = new ArrayList<>(count);
+        long latitude = 0;
+        long longitude = 0;
+        for (int i = 0; i < count; i++) {
+            int actionIndex = checkedCount(readUnsigned(encoded, cursor), actions.length);
+            String text = readString(encoded, cursor);
+            latitude += readSigned(encoded, cursor);
+            longitude += readSigned(encoded, cursor);
+            maneuvers.add(new RouteManeuver(text, actionIndex == 0 ? null : actions[actionIndex - 1],
+                    latitude / factor, longitude / factor));
+        }
+        return maneuvers;
+    }
+
+    // Rounds half away from zero, like the reference implementations, so encodings match theirs.
+    private static long round(double value, double factor) {
+        long rounded = Math.round(Math.abs(value * factor));
+        return value < 0 ? -rounded : rounded;
+    }
+
+    private static void appendUnsigned(StringBuilder out, long value) {
+        while (value > 0x1F) {
+            out.append(ENCODING_TABLE[(int) ((value & 0x1F) | 0x20)]);
+            value >>>= 5;
+        }
+        out.append(ENCODING_TABLE[(int) value]);
+    }
+
+    private static void appendSigned(StringBuilder out, long value) {
+        long unsigned = value << 1;
+        appendUnsigned(out, value < 0 ? ~unsigned : unsigned);
+    }
+
+    // Strings are stored as their UTF-8 length plus one, zero meaning null, followed by the
+    // bytes in base64url without padding.
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            appendUnsigned(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        appendUnsigned(out, bytes.length + 1);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int chunk = (bytes[i] & 0xFF) << 16;
+            if (i + 1 < bytes.length) {
+                chunk |= (bytes[i + 1] & 0xFF) << 8;
+            }
+            if (i + 2 < bytes.length) {
+                chunk |= bytes[i + 2] & 0xFF;
+            }
+            int characters = Math.min(4, (bytes.length - i) * 4 / 3 + 1);
+            for (int c = 0; c < characters; c++) {
+                out.append(ENCODING_TABLE[(chunk >> (18 - 6 * c)) & 0x3F]);
+            }
+        }
+    }
+
+    private static String readString(CharSequence encoded, int[] cursor) {
+        int length = checkedCount(readUnsigned(encoded, cursor), encoded.length());
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        for (int i = 0; i < bytes.length; i += 3) {
+            int characters = Math.min(4, (bytes.length - i) * 4 / 3 + 1);
+            int chunk = 0;
+            for (int c = 0; c < characters; c++) {
+                chunk |= decodeCharacter(encoded, cursor[0]++) << (18 - 6 * c);
+            }
+            bytes[i] = (byte) (chunk >> 16);
+            if (i + 1 < bytes.length) {
+                bytes[i + 1] = (byte) (chunk >> 8);
+            }
+            if (i + 2 < bytes.length) {
+                bytes[i + 2] = (byte) chunk;
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readUnsigned(CharSequence encoded, int[] cursor) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 5) {
+            int chunk = decodeCharacter(encoded, cursor[0]++);
+            value |= (long) (chunk & 0x1F) << shift;
+            if ((chunk & 0x20) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + cursor[0]);
+    }
+
+    private static long readSigned(CharSequence encoded, int[] cursor) {
+        long unsigned = readUnsigned(encoded, cursor);
+        return (unsigned & 1) != 0 ? ~(unsigned >>> 1) : unsigned >>> 1;
+    }
+
+    private static int decodeCharacter(CharSequence encoded, int index) {
+        if (index >= encoded.length()) {
+            throw new IllegalArgumentException("Unexpected end of input");
+        }
+        char c = encoded.charAt(index);
+        int value = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid character '" + c + "' at " + index);
+        }
+        return value;
+    }
+
+    private static int checkedCount(long value, int max) {
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+}
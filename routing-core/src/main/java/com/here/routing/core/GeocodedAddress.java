@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * An address with its coordinates, independent of the geocoder that found it.
+ */
+public final class GeocodedAddress {
+
+    public final String addressText;
+    public final double latitude;
+    public final double longitude;
+
+    public GeocodedAddress(String addressText, double latitude, double longitude) {
+        this.addressText = addressText;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    @Override
+    public String toString() {
+        return addressText + " (" + latitude + ", " + longitude + ")";
+    }
+}
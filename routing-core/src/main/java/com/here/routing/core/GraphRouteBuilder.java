@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the node paths found on a {@link RoadGraph} into a {@link RouteResult}, including
+ * simple turn-by-turn maneuvers derived from the change of heading at each node.
+ */
+public final class GraphRouteBuilder {
+
+    // Heading changes below this are treated as going straight on.
+    private static final double TURN_THRESHOLD_IN_DEGREES = 30;
+    private static final double SHARP_TURN_THRESHOLD_IN_DEGREES = 120;
+    private static final double U_TURN_THRESHOLD_IN_DEGREES = 170;
+
+    private GraphRouteBuilder() {
+    }
+
+    /**
+     * @param legs                 one path per pair of consecutive waypoints.
+     * @param destinationLatitude  the last waypoint, before it was snapped to the graph.
+     * @param destinationLongitude the last waypoint, before it was snapped to the graph.
+     */
+    public static RouteResult build(RoadGraph graph, List<BidirectionalAStar.Path> legs,
+                                    double destinationLatitude, double destinationLongitude) {
+        // One extra vertex, see below.
+        int vertexCount = 1;
+        for (BidirectionalAStar.Path leg : legs) {
+            vertexCount += leg.nodes.length;
+        }
+        double[] latitudes = new double[vertexCount];
+        double[] longitudes = new double[vertexCount];
+        int size = 0;
+        double lengthInMeters = 0;
+        double travelTimeInSeconds = 0;
+        List<List<RouteManeuver>> legManeuvers = new ArrayList<>(legs.size());
+
+        for (BidirectionalAStar.Path leg : legs) {
+            for (int i = 0; i < leg.nodes.length; i++) {
+                // Consecutive legs share the waypoint node; keep it only once.
+                if (i == 0 && size > 0) {
+                    continue;
+                }
+                latitudes[size] = graph.latitude(leg.nodes[i]);
+                longitudes[size] = graph.longitude(leg.nodes[i]);
+                size++;
+            }
+            lengthInMeters += leg.lengthInMeters;
+            travelTimeInSeconds += leg.travelTimeInSeconds;
+            legManeuvers.add(buildManeuvers(graph, leg.nodes));
+        }
+        if (size < 2) {
+            // All waypoints snapped to the same node, e.g. because they are close together. A
+            // route shape needs two vertices, so it leads from that node to the destination.
+            latitudes[size] = destinationLatitude;
+            longitudes[size] = destinationLongitude;
+            size++;
+        }
+
+        return new RouteResult(new PackedShape(latitudes, longitudes, size),
+                (int) Math.round(lengthInMeters), (int) Math.round(travelTimeInSeconds), legManeuvers);
+    }
+
+    private static List<RouteManeuver> buildManeuvers(RoadGraph graph, int[] nodes) {
+        List<RouteManeuver> maneuvers = new ArrayList<>();
+        int first = nodes[0];
+        maneuvers.add(new RouteManeuver("Depart", "DEPART", graph.latitude(first), graph.longitude(first)));
+
+        for (int i = 1; i < nodes.length - 1; i++) {
+            double incoming = heading(graph, nodes[i - 1], nodes[i]);
+            double outgoing = heading(graph, nodes[i], nodes[i + 1]);
+            // Normalized to (-180, 180]; positive values turn right.
+            double change = ((outgoing - incoming + 540) % 360) - 180;
+            double magnitude = Math.abs(change);
+            if (magnitude < TURN_THRESHOLD_IN_DEGREES) {
+                continue;
+            }
+
+            String side = change > 0 ? "right" : "left";
+            String text;
+            String action;
+            if (magnitude >= U_TURN_THRESHOLD_IN_DEGREES) {
+                text = "Make a U-turn";
+                action = change > 0 ? "RIGHT_U_TURN" : "LEFT_U_TURN";
+            } else if (magnitude >= SHARP_TURN_THRESHOLD_IN_DEGREES) {
+                text = "Turn sharply " + side;
+                action = change > 0 ? "SHARP_RIGHT_TURN" : "SHARP_LEFT_TURN";
+            } else {
+                text = "Turn " + side;
+                action = change > 0 ? "RIGHT_TURN" : "LEFT_TURN";
+            }
+            maneuvers.add(new RouteManeuver(text, action, graph.latitude(nodes[i]), graph.longitude(nodes[i])));
+        }
+
+        int last = nodes[nodes.length - 1];
+        maneuvers.add(new RouteManeuver("Arrive at your destination", "ARRIVE",
+                graph.latitude(last), graph.longitude(last)));
+        return maneuvers;
+    }
+
+    // Initial great-circle bearing in degrees clockwise from north.
+    private static double heading(RoadGraph graph, int from, int to) {
+        double latitude1 = Math.toRadians(graph.latitude(from));
+        double latitude2 = Math.toRadians(graph.latitude(to));
+        double dLongitude = Math.toRadians(graph.longitude(to) - graph.longitude(from));
+        double y = Math.sin(dLongitude) * Math.cos(latitude2);
+        double x = Math.cos(latitude1) * Math.sin(latitude2)
+                - Math.sin(latitude1) * Math.cos(latitude2) * Math.cos(dLongitude);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+    }
+}
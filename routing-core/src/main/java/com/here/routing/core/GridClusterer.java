@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups points into the cells of a Web Mercator grid whose cell size follows the zoom level,
+ * so that a cell always covers about the same number of screen pixels.
+ *
+ * The grid of a zoom level is exactly the grid of the next finer level with 2x2 cells merged.
+ * Clusters are therefore computed from the raw points only once, for the finest level, and
+ * every coarser level is derived from the level below it on first use.
+ */
+public class GridClusterer {
+
+    public static final class Cluster {
+        public final long cellKey;
+        public final int count;
+        public final double latitude;
+        public final double longitude;
+        // Index of the first point that fell into this cluster.
+        public final int firstPointIndex;
+
+        Cluster(long cellKey, int count, double latitude, double longitude, int firstPointIndex) {
+            this.cellKey = cellKey;
+            this.count = count;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.firstPointIndex = firstPointIndex;
+        }
+    }
+
+    // Mutable accumulator used while merging a level.
+    private static final class CellAccumulator {
+        int count;
+        double latitudeSum;
+        double longitudeSum;
+        int firstPointIndex = Integer.MAX_VALUE;
+
+        void add(int count, double latitude, double longitude, int firstPointIndex) {
+            this.count += count;
+            latitudeSum += latitude * count;
+            longitudeSum += longitude * count;
+            this.firstPointIndex = Math.min(this.firstPointIndex, firstPointIndex);
+        }
+    }
+
+    private final int maxZoomLevel;
+    private final int cellSizeShift;
+    private final List<List<Cluster>> clustersByZoomLevel = new ArrayList<>();
+
+    /**
+     * @param maxZoomLevel       the finest zoom level that is clustered; above it points stay
+     *                           clustered as on this level.
+     * @param cellSizeInPixels   edge length of a cell on screen, rounded down to a power of two.
+     */
+    public GridClusterer(int maxZoomLevel, int cellSizeInPixels) {
+        // A 256 pixel tile is split into 256 / cellSize cells per axis.
+        int cellSizeShift = 31 - Integer.numberOfLeadingZeros(Math.max(cellSizeInPixels, 1));
+        if (maxZoomLevel < 0 || maxZoomLevel + 8 - cellSizeShift > 30) {
+            throw new IllegalArgumentException("Unsupported maxZoomLevel: " + maxZoomLevel);
+        }
+        this.maxZoomLevel = maxZoomLevel;
+        this.cellSizeShift = cellSizeShift;
+        setPoints(new double[0], new double[0], 0);
+    }
+
+    public void setPoints(double[] latitudes, double[] longitudes, int count) {
+        clustersByZoomLevel.clear();
+        for (int zoomLevel = 0; zoomLevel <= maxZoomLevel; zoomLevel++) {
+            clustersByZoomLevel.add(null);
+        }
+
+        int bits = gridBits(maxZoomLevel);
+        Map<Long, CellAccumulator> cells = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            long cellKey = cellKey(latitudes[i], longitudes[i], bits);
+            CellAccumulator cell = cells.get(cellKey);
+            if (cell == null) {
+                cell = new CellAccumulator();
+                cells.put(cellKey, cell);
+            }
+            cell.add(1, latitudes[i], longitudes[i], i);
+        }
+        clustersByZoomLevel.set(maxZoomLevel, toClusters(cells));
+    }
+
+    public List<Cluster> getClusters(double zoomLevel) {
+        int level = (int) Math.max(0, Math.min(maxZoomLevel, Math.floor(zoomLevel)));
+        return getClusters(level);
+    }
+
+    private List<Cluster> getClusters(int zoomLevel) {
+        List<Cluster> clusters = clustersByZoomLevel.get(zoomLevel);
+        if (clusters == null) {
+            clusters = mergeIntoParentCells(getClusters(zoomLevel + 1));
+            clustersByZoomLevel.set(zoomLevel, clusters);
+        }
+        return clusters;
+    }
+
+    private static List<Cluster> mergeIntoParentCells(List<Cluster> children) {
+        Map<Long, CellAccumulator> cells = new HashMap<>();
+        for (Cluster child : children) {
+            long parentKey = parentCellKey(child.cellKey);
+            CellAccumulator cell = cells.get(parentKey);
+            if (cell == null) {
+                cell = new CellAccumulator();
+                cells.put(parentKey, cell);
+            }
+            cell.add(child.count, child.latitude, child.longitude, child.firstPointIndex);
+        }
+        return toClusters(cells);
+    }
+
+    private static List<Cluster> toClusters(Map<Long, CellAccumulator> cells) {
+        List<Cluster> clusters = new ArrayList<>(cells.size());
+        for (Map.Entry<Long, CellAccumulator> entry : cells.entrySet()) {
+            CellAccumulator cell = entry.getValue();
+            clusters.add(new Cluster(entry.getKey(), cell.count,
+                    cell.latitudeSum / cell.count, cell.longitudeSum / cell.count, cell.firstPointIndex));
+        }
+        return Collections.unmodifiableList(clusters);
+    }
+
+    private int gridBits(int zoomLevel) {
+        return zoomLevel + 8 - cellSizeShift;
+    }
+
+    private static long cellKey(double latitude, double longitude, int bits) {
+        double x = (longitude + 180) / 360;
+        double sinLatitude = Math.sin(Math.toRadians(latitude));
+        double y = 0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI);
+
+        long cellsPerAxis = 1L << bits;
+        long column = clamp((long) Math.floor(x * cellsPerAxis), cellsPerAxis - 1);
+        long row = clamp((long) Math.floor(y * cellsPerAxis), cellsPerAxis - 1);
+        return (column << 32) | row;
+    }
+
+    private static long parentCellKey(long cellKey) {
+        long column = cellKey >>> 32;
+        long row = cellKey & 0xFFFFFFFFL;
+        return ((column >> 1) << 32) | (row >> 1);
+    }
+
+    private static long clamp(long value, long max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
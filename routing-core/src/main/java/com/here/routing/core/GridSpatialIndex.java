@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over latitude/longitude for point items, supporting incremental inserts and
+ * removals and radius queries. Items are compared by identity.
+ */
+public class GridSpatialIndex<T> {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+
+    private static final class Entry<T> {
+        final T item;
+        final double latitude;
+        final double longitude;
+        final long cellKey;
+
+        Entry(T item, double latitude, double longitude, long cellKey) {
+            this.item = item;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.cellKey = cellKey;
+        }
+    }
+
+    private final double cellSizeInDegrees;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+
+    /**
+     * @param cellSizeInDegrees edge length of a grid cell. Queries are fastest when it is in the
+     *                          order of the typical query radius.
+     */
+    public GridSpatialIndex(double cellSizeInDegrees) {
+        if (cellSizeInDegrees <= 0) {
+            throw new IllegalArgumentException("cellSizeInDegrees must be positive: " + cellSizeInDegrees);
+        }
+        this.cellSizeInDegrees = cellSizeInDegrees;
+    }
+
+    public void insert(T item, double latitude, double longitude) {
+        remove(item);
+        long cellKey = cellKey(cellIndex(latitude), cellIndex(longitude));
+        Entry<T> entry = new Entry<>(item, latitude, longitude, cellKey);
+        List<Entry<T>> cell = cells.get(cellKey);
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells.put(cellKey, cell);
+        }
+        cell.add(entry);
+        entries.put(item, entry);
+    }
+
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+        List<Entry<T>> cell = cells.get(entry.cellKey);
+        cell.remove(entry);
+        if (cell.isEmpty()) {
+            cells.remove(entry.cellKey);
+        }
+        return true;
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the item closest to the given point within radiusInMeters, or null.
+     */
+    public T findNearest(double latitude, double longitude, double radiusInMeters) {
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        double[] nearestDistanceSquared = {radiusInMeters * radiusInMeters};
+        List<T> nearest = new ArrayList<>(1);
+        visitCandidates(latitude, longitude, radiusInMeters, cosLatitude, entry -> {
+            double distanceSquared = distanceSquared(latitude, longitude, cosLatitude, entry);
+            if (distanceSquared <= nearestDistanceSquared[0]) {
+                nearestDistanceSquared[0] = distanceSquared;
+                nearest.clear();
+                nearest.add(entry.item);
+            }
+        });
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Adds all items within radiusInMeters of the given point to out, in no particular order.
+     */
+    public void findWithin(double latitude, double longitude, double radiusInMeters, List<T> out) {
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        double radiusSquared = radiusInMeters * radiusInMeters;
+        visitCandidates(latitude, longitude, radiusInMeters, cosLatitude, entry -> {
+            if (distanceSquared(latitude, longitude, cosLatitude, entry) <= radiusSquared) {
+                out.add(entry.item);
+            }
+        });
+    }
+
+    private interface EntryVisitor<T> {
+        void visit(Entry<T> entry);
+    }
+
+    // Visits the entries of all cells covering the circle. A large radius, e.g. a tap on a map
+    // zoomed out to a continent, covers more cells than there are items; then all items are
+    // visited instead.
+    private void visitCandidates(double latitude, double longitude, double radiusInMeters, double cosLatitude,
+                                 EntryVisitor<T> visitor) {
+        double latitudeRadius = radiusInMeters / METERS_PER_DEGREE_LATITUDE;
+        double longitudeRadius = latitudeRadius / Math.max(cosLatitude, 0.01);
+        int firstRow = cellIndex(Math.max(latitude - latitudeRadius, -90));
+        int lastRow = cellIndex(Math.min(latitude + latitudeRadius, 90));
+        int firstColumn = cellIndex(longitudeRadius >= 180 ? -180 : longitude - longitudeRadius);
+        int lastColumn = cellIndex(longitudeRadius >= 180 ? 180 : longitude + longitudeRadius);
+
+        long cellCount = (long) (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1);
+        if (cellCount > entries.size()) {
+            for (Entry<T> entry : entries.values()) {
+                visitor.visit(entry);
+            }
+            return;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                List<Entry<T>> cell = cells.get(cellKey(row, column));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry<T> entry : cell) {
+                    visitor.visit(entry);
+                }
+            }
+        }
+    }
+
+    // Equirectangular approximation, accurate for the short distances used in picking.
+    private static double distanceSquared(double latitude, double longitude, double cosLatitude, Entry<?> entry) {
+        double dy = (entry.latitude - latitude) * METERS_PER_DEGREE_LATITUDE;
+        double dx = (entry.longitude - longitude) * METERS_PER_DEGREE_LATITUDE * cosLatitude;
+        return dx * dx + dy * dy;
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellSizeInDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+}
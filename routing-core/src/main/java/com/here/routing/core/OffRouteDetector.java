@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * Decides when to calculate a new route while following one. Single fixes off the route are
+ * ignored, as GPS noise produces them all the time: a reroute needs several consecutive fixes
+ * beyond the threshold, spanning a minimum time, and reroutes are at least a minimum interval
+ * apart.
+ *
+ * Not thread-safe; feed it from one thread.
+ */
+public final class OffRouteDetector {
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final double thresholdInMeters;
+    private final int minDeviatingFixes;
+    private final long minDeviationMillis;
+    private final long minRerouteIntervalMillis;
+
+    private int deviatingFixes;
+    private long firstDeviationMillis;
+    private long lastRerouteMillis = NEVER;
+
+    /**
+     * @param thresholdInMeters        distance from the route beyond which a fix deviates.
+     * @param minDeviatingFixes        consecutive deviating fixes needed for a reroute.
+     * @param minDeviationMillis       time the deviation must last for a reroute.
+     * @param minRerouteIntervalMillis minimum time between two reroutes.
+     */
+    public OffRouteDetector(double thresholdInMeters, int minDeviatingFixes,
+                            long minDeviationMillis, long minRerouteIntervalMillis) {
+        this.thresholdInMeters = thresholdInMeters;
+        this.minDeviatingFixes = minDeviatingFixes;
+        this.minDeviationMillis = minDeviationMillis;
+        this.minRerouteIntervalMillis = minRerouteIntervalMillis;
+    }
+
+    /**
+     * @param distanceToRouteInMeters distance of the fix from the route; infinite if it did not match.
+     * @param accuracyInMeters        estimated accuracy of the fix, or 0 if unknown.
+     * @param timeMillis              time of the fix on a monotonic clock.
+     * @return true if a new route should be calculated now.
+     */
+    public boolean onFix(double distanceToRouteInMeters, double accuracyInMeters, long timeMillis) {
+        // A fix only deviates if it is off the route even when its inaccuracy is taken into
+        // account. Very inaccurate fixes are not allowed to hide a deviation completely.
+        double tolerance = thresholdInMeters + Math.min(Math.max(accuracyInMeters, 0), thresholdInMeters);
+        if (distanceToRouteInMeters <= tolerance) {
+            deviatingFixes = 0;
+            return false;
+        }
+
+        if (deviatingFixes++ == 0) {
+            firstDeviationMillis = timeMillis;
+        }
+        if (deviatingFixes < minDeviatingFixes || timeMillis - firstDeviationMillis < minDeviationMillis) {
+            return false;
+        }
+        if (lastRerouteMillis != NEVER && timeMillis - lastRerouteMillis < minRerouteIntervalMillis) {
+            return false;
+        }
+        lastRerouteMillis = timeMillis;
+        deviatingFixes = 0;
+        return true;
+    }
+
+    /**
+     * Starts over for a new route. The time of the last reroute is kept, so that the rate limit
+     * holds across routes.
+     */
+    public void reset() {
+        deviatingFixes = 0;
+    }
+}
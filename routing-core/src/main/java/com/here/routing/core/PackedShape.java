@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * A polyline stored as two parallel primitive arrays instead of one object per vertex.
+ * All queries work directly on the arrays and do not allocate.
+ */
+public final class PackedShape {
+
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_000;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int size;
+
+    /**
+     * Wraps the arrays without copying them. Only the first size entries are used.
+     */
+    public PackedShape(double[] latitudes, double[] longitudes, int size) {
+        if (latitudes.length < size || longitudes.length < size) {
+            throw new IllegalArgumentException("Arrays are shorter than size " + size);
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double latitude(int index) {
+        return latitudes[index];
+    }
+
+    public double longitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * Direct access to the backing array, e.g. to pass it on to other array based algorithms.
+     * Entries at and above {@link #size()} must be ignored.
+     */
+    public double[] latitudes() {
+        return latitudes;
+    }
+
+    public double[] longitudes() {
+        return longitudes;
+    }
+
+    public double lengthInMeters() {
+        double length = 0;
+        for (int i = 1; i < size; i++) {
+            length += distanceInMeters(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+        return length;
+    }
+
+    /**
+     * Writes south, west, north and east into the first four entries of out.
+     */
+    public void boundingBox(double[] out) {
+        double south = Double.POSITIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            south = Math.min(south, latitudes[i]);
+            north = Math.max(north, latitudes[i]);
+            west = Math.min(west, longitudes[i]);
+            east = Math.max(east, longitudes[i]);
+        }
+        out[0] = south;
+        out[1] = west;
+        out[2] = north;
+        out[3] = east;
+    }
+
+    /**
+     * Encodes the shape as fixed-point deltas: entry 2i holds the latitude and entry 2i+1 the
+     * longitude of vertex i, each as the difference to vertex i-1 in units of 10^-precision degrees.
+     * Deltas of neighbouring vertices are small, which makes the result compress well.
+     */
+    public int[] toFixedPointDeltas(int precision) {
+        double factor = Math.pow(10, precision);
+        int[] deltas = new int[2 * size];
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        for (int i = 0; i < size; i++) {
+            long latitude = Math.round(latitudes[i] * factor);
+            long longitude = Math.round(longitudes[i] * factor);
+            deltas[2 * i] = (int) (latitude - previousLatitude);
+            deltas[2 * i + 1] = (int) (longitude - previousLongitude);
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        return deltas;
+    }
+
+    public static PackedShape fromFixedPointDeltas(int[] deltas, int precision) {
+        double factor = Math.pow(10, precision);
+        int size = deltas.length / 2;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        long latitude = 0;
+        long longitude = 0;
+        for (int i = 0; i < size; i++) {
+            latitude += deltas[2 * i];
+            longitude += deltas[2 * i + 1];
+            latitudes[i] = latitude / factor;
+            longitudes[i] = longitude / factor;
+        }
+        return new PackedShape(latitudes, longitudes, size);
+    }
+
+    /**
+     * Great-circle distance using the haversine formula.
+     */
+    public static double distanceInMeters(double latitude1, double longitude1,
+                                          double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_IN_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PackedShape)) {
+            return false;
+        }
+        PackedShape other = (PackedShape) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(latitudes[i], other.latitudes[i]) != 0
+                    || Double.compare(longitudes[i], other.longitudes[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        for (int i = 0; i < size; i++) {
+            long latitudeBits = Double.doubleToLongBits(latitudes[i]);
+            long longitudeBits = Double.doubleToLongBits(longitudes[i]);
+            result = 31 * result + (int) (latitudeBits ^ (latitudeBits >>> 32));
+            result = 31 * result + (int) (longitudeBits ^ (longitudeBits >>> 32));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedShape[size=" + size + "]";
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Arrays;
+
+/**
+ * Splits a polyline into runs of consecutive vertices whose bounding boxes stay within a
+ * maximum span, so that only the chunks in view need to be on the map. Neighbouring chunks
+ * share their boundary vertex; drawn together they show the polyline without gaps.
+ *
+ * The polyline is given as indices into a shape, e.g. the result of a simplification.
+ * Chunks are described by positions in that index array.
+ */
+public final class PolylineChunks {
+
+    private final int[] starts;
+    private final int indexCount;
+    private final double[] south;
+    private final double[] west;
+    private final double[] north;
+    private final double[] east;
+    private final int count;
+
+    private PolylineChunks(int[] starts, int indexCount,
+                           double[] south, double[] west, double[] north, double[] east, int count) {
+        this.starts = starts;
+        this.indexCount = indexCount;
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+        this.count = count;
+    }
+
+    /**
+     * @param maxVertices upper bound for the vertices of one chunk, at least 2.
+     */
+    public static PolylineChunks split(PackedShape shape, int[] indices, int indexCount,
+                                       double maxLatitudeSpan, double maxLongitudeSpan, int maxVertices) {
+        if (maxVertices < 2) {
+            throw new IllegalArgumentException("maxVertices must be at least 2: " + maxVertices);
+        }
+        int capacity = 16;
+        int[] starts = new int[capacity];
+        double[] south = new double[capacity];
+        double[] west = new double[capacity];
+        double[] north = new double[capacity];
+        double[] east = new double[capacity];
+        int count = 0;
+        if (indexCount == 0) {
+            return new PolylineChunks(starts, 0, south, west, north, east, 0);
+        }
+
+        int chunkStart = 0;
+        double minLatitude = shape.latitude(indices[0]);
+        double maxLatitude = minLatitude;
+        double minLongitude = shape.longitude(indices[0]);
+        double maxLongitude = minLongitude;
+        for (int position = 1; position <= indexCount; position++) {
+            boolean last = position == indexCount;
+            double latitude = last ? 0 : shape.latitude(indices[position]);
+            double longitude = last ? 0 : shape.longitude(indices[position]);
+            // A chunk always keeps at least one segment, even if that segment alone is too long.
+            boolean full = !last && position - 1 > chunkStart
+                    && (position - chunkStart >= maxVertices
+                    || Math.max(maxLatitude, latitude) - Math.min(minLatitude, latitude) > maxLatitudeSpan
+                    || Math.max(maxLongitude, longitude) - Math.min(minLongitude, longitude) > maxLongitudeSpan);
+            if (last || full) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    starts = Arrays.copyOf(starts, capacity);
+                    south = Arrays.copyOf(south, capacity);
+                    west = Arrays.copyOf(west, capacity);
+                    north = Arrays.copyOf(north, capacity);
+                    east = Arrays.copyOf(east, capacity);
+                }
+                starts[count] = chunkStart;
+                south[count] = minLatitude;
+                west[count] = minLongitude;
+                north[count] = maxLatitude;
+                east[count] = maxLongitude;
+                count++;
+                if (last) {
+                    break;
+                }
+                // The next chunk starts with the last vertex of this one.
+                chunkStart = position - 1;
+                minLatitude = maxLatitude = shape.latitude(indices[chunkStart]);
+                minLongitude = maxLongitude = shape.longitude(indices[chunkStart]);
+            }
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+            minLongitude = Math.min(minLongitude, longitude);
+            maxLongitude = Math.max(maxLongitude, longitude);
+        }
+        return new PolylineChunks(starts, indexCount, south, west, north, east, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Position of the first vertex of a chunk in the index array.
+     */
+    public int start(int chunk) {
+        return starts[chunk];
+    }
+
+    /**
+     * Position after the last vertex of a chunk in the index array.
+     */
+    public int end(int chunk) {
+        return chunk + 1 < count ? starts[chunk + 1] + 1 : indexCount;
+    }
+
+    /**
+     * Finds the chunks whose bounding boxes intersect a box. If west is greater than east, the
+     * box crosses the antimeridian.
+     *
+     * @param result receives the chunk numbers in ascending order; needs room for {@link #size()}.
+     * @return the number of chunks found.
+     */
+    public int findIntersecting(double south, double west, double north, double east, int[] result) {
+        boolean crossesAntimeridian = west > east;
+        int found = 0;
+        for (int chunk = 0; chunk < count; chunk++) {
+            if (this.north[chunk] < south || this.south[chunk] > north) {
+                continue;
+            }
+            boolean overlapsLongitude = crossesAntimeridian
+                    ? this.east[chunk] >= west || this.west[chunk] <= east
+                    : this.east[chunk] >= west && this.west[chunk] <= east;
+            if (overlapsLongitude) {
+                result[found++] = chunk;
+            }
+        }
+        return found;
+    }
+}
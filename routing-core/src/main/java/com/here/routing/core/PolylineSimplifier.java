@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * Douglas-Peucker simplification of polylines given as {@link PackedShape}s.
+ * Distances are measured in meters on a local equirectangular projection, which is accurate
+ * enough for tolerances of a few pixels on screen.
+ *
+ * An instance keeps its working buffers, so simplifying the same shape with several
+ * tolerances does not allocate after the first call. Instances are not thread-safe.
+ */
+public final class PolylineSimplifier {
+
+    private static final double EARTH_RADIUS_IN_METERS = 6_371_000;
+    // Approximate ground resolution of zoom level 0 at the equator, for 256 pixel tiles.
+    private static final double METERS_PER_PIXEL_AT_ZOOM_0 = 156_543.03;
+
+    private PackedShape projectedShape;
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private boolean[] keep = new boolean[0];
+    private int[] stack = new int[0];
+
+    /**
+     * Returns the size of one screen pixel in meters at the given zoom level and latitude.
+     */
+    public static double metersPerPixel(double zoomLevel, double latitude) {
+        return METERS_PER_PIXEL_AT_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoomLevel);
+    }
+
+    /**
+     * Simplifies the shape so that no removed vertex is farther than toleranceInMeters from
+     * the result. The first and last vertex are always kept.
+     *
+     * @param outIndices receives the indices of the kept vertices in ascending order;
+     *                   must be at least as long as the shape.
+     * @return the number of kept vertices.
+     */
+    public int simplify(PackedShape shape, double toleranceInMeters, int[] outIndices) {
+        int count = shape.size();
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) {
+                outIndices[i] = i;
+            }
+            return count;
+        }
+
+        project(shape);
+        keep[0] = true;
+        keep[count - 1] = true;
+        for (int i = 1; i < count - 1; i++) {
+            keep[i] = false;
+        }
+        double toleranceSquared = toleranceInMeters * toleranceInMeters;
+
+        // Explicit stack instead of recursion: long routes would otherwise risk a StackOverflowError.
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = count - 1;
+
+        while (stackSize > 0) {
+            int last = stack[--stackSize];
+            int first = stack[--stackSize];
+
+            double maxDistanceSquared = 0;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distanceSquared = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    farthest = i;
+                }
+            }
+
+            if (farthest != -1 && maxDistanceSquared > toleranceSquared) {
+                keep[farthest] = true;
+                stack[stackSize++] = first;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = farthest;
+                stack[stackSize++] = last;
+            }
+        }
+
+        int keptCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                outIndices[keptCount++] = i;
+            }
+        }
+        return keptCount;
+    }
+
+    // Projects the shape once, so that the inner loop only works with plain doubles.
+    // Repeated calls for the same shape reuse the projection.
+    private void project(PackedShape shape) {
+        int count = shape.size();
+        if (x.length < count) {
+            x = new double[count];
+            y = new double[count];
+            keep = new boolean[count];
+            stack = new int[2 * count];
+            projectedShape = null;
+        }
+        if (shape == projectedShape) {
+            return;
+        }
+
+        double cosLatitude = Math.cos(Math.toRadians(shape.latitude(0)));
+        for (int i = 0; i < count; i++) {
+            x[i] = Math.toRadians(shape.longitude(i) - shape.longitude(0)) * cosLatitude * EARTH_RADIUS_IN_METERS;
+            y[i] = Math.toRadians(shape.latitude(i) - shape.latitude(0)) * EARTH_RADIUS_IN_METERS;
+        }
+        projectedShape = shape;
+    }
+
+    static double segmentDistanceSquared(double px, double py,
+                                         double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Random;
+
+/**
+ * Uniformly distributed random coordinates inside a bounding box, e.g. for demo waypoints.
+ */
+public final class RandomCoordinates {
+
+    private final Random random;
+
+    public RandomCoordinates(Random random) {
+        this.random = random;
+    }
+
+    public double nextLatitude(double south, double north) {
+        return south + random.nextDouble() * (north - south);
+    }
+
+    /**
+     * Handles boxes that cross the antimeridian, where west is greater than east.
+     */
+    public double nextLongitude(double west, double east) {
+        double width = east >= west ? east - west : east + 360 - west;
+        double longitude = west + random.nextDouble() * width;
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Directed road graph in compressed sparse row form, loaded from a compact binary file.
+ *
+ * File format, all values big-endian 32 bit integers:
+ * <pre>
+ *   magic "RGRF", version, nodeCount, edgeCount
+ *   nodeCount x (latitude, longitude) in 10^-7 degrees
+ *   (nodeCount + 1) x index of the first outgoing edge of each node
+ *   edgeCount x target node
+ *   edgeCount x length in decimeters
+ *   edgeCount x travel time in deciseconds
+ * </pre>
+ */
+public final class RoadGraph {
+
+    public static final int MAGIC = 0x52475246;
+    public static final int VERSION = 1;
+
+    private static final double COORDINATE_FACTOR = 1e7;
+    private static final double NODE_GRID_CELL_SIZE_IN_DEGREES = 0.01;
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+
+    private final int nodeCount;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final int[] firstEdge;
+    private final int[] edgeTarget;
+    private final int[] edgeLengthInDecimeters;
+    private final int[] edgeTimeInDeciseconds;
+
+    // Reverse adjacency for backward searches; entries refer to forward edge indices.
+    private final int[] firstInEdge;
+    private final int[] inEdges;
+
+    // Nodes sorted by grid cell, for nearest node lookups.
+    private final long[] sortedCellKeys;
+    private final int[] nodesByCell;
+
+    private final double maxSpeedInMetersPerSecond;
+
+    public RoadGraph(int[] latitudes, int[] longitudes, int[] firstEdge, int[] edgeTarget,
+                     int[] edgeLengthInDecimeters, int[] edgeTimeInDeciseconds) {
+        this.nodeCount = latitudes.length;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.firstEdge = firstEdge;
+        this.edgeTarget = edgeTarget;
+        this.edgeLengthInDecimeters = edgeLengthInDecimeters;
+        this.edgeTimeInDeciseconds = edgeTimeInDeciseconds;
+        if (firstEdge.length != nodeCount + 1 || firstEdge[nodeCount] != edgeTarget.length) {
+            throw new IllegalArgumentException("Inconsistent edge index");
+        }
+
+        int edgeCount = edgeTarget.length;
+        firstInEdge = new int[nodeCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            firstInEdge[edgeTarget[edge] + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            firstInEdge[node + 1] += firstInEdge[node];
+        }
+        inEdges = new int[edgeCount];
+        int[] fill = Arrays.copyOf(firstInEdge, nodeCount);
+        double maxSpeed = 1;
+        for (int node = 0; node < nodeCount; node++) {
+            for (int edge = firstEdge[node]; edge < firstEdge[node + 1]; edge++) {
+                inEdges[fill[edgeTarget[edge]]++] = edge;
+                if (edgeTimeInDeciseconds[edge] > 0) {
+                    maxSpeed = Math.max(maxSpeed,
+                            (double) edgeLengthInDecimeters[edge] / edgeTimeInDeciseconds[edge]);
+                }
+            }
+        }
+        maxSpeedInMetersPerSecond = maxSpeed;
+
+        long[] keyAndNode = new long[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            // Cell keys are non-negative and fit into 32 bits, so key and node can share a long for sorting.
+            keyAndNode[node] = (cellKey(latitude(node), longitude(node)) << 32) | node;
+        }
+        Arrays.sort(keyAndNode);
+        sortedCellKeys = new long[nodeCount];
+        nodesByCell = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            sortedCellKeys[i] = keyAndNode[i] >>> 32;
+            nodesByCell[i] = (int) keyAndNode[i];
+        }
+    }
+
+    public static RoadGraph read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = buffer.asIntBuffer();
+            if (ints.remaining() < 4 || ints.get() != MAGIC) {
+                throw new IOException("Not a road graph file: " + file);
+            }
+            int version = ints.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported road graph version " + version + ": " + file);
+            }
+            int nodeCount = ints.get();
+            int edgeCount = ints.get();
+            // Checked before allocating, so that a corrupt header cannot ask for huge arrays.
+            long expectedInts = 3L * nodeCount + 1 + 3L * edgeCount;
+            if (nodeCount < 0 || edgeCount < 0 || ints.remaining() != expectedInts) {
+                throw new IOException("Corrupt road graph header, " + nodeCount + " nodes and "
+                        + edgeCount + " edges in " + ints.remaining() + " values: " + file);
+            }
+
+            int[] latitudes = new int[nodeCount];
+            int[] longitudes = new int[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                latitudes[node] = ints.get();
+                longitudes[node] = ints.get();
+            }
+            int[] firstEdge = new int[nodeCount + 1];
+            ints.get(firstEdge);
+            int[] edgeTarget = new int[edgeCount];
+            ints.get(edgeTarget);
+            int[] edgeLength = new int[edgeCount];
+            ints.get(edgeLength);
+            int[] edgeTime = new int[edgeCount];
+            ints.get(edgeTime);
+            checkStructure(nodeCount, firstEdge, edgeTarget, edgeLength, edgeTime, file);
+            return new RoadGraph(latitudes, longitudes, firstEdge, edgeTarget, edgeLength, edgeTime);
+        }
+    }
+
+    // The constructor and searches index arrays with these values without further checks. An edge
+    // with a length takes time, as the A* potential divides lengths by the fastest edge speed.
+    private static void checkStructure(int nodeCount, int[] firstEdge, int[] edgeTarget,
+                                       int[] edgeLength, int[] edgeTime, File file) throws IOException {
+        if (firstEdge[0] != 0 || firstEdge[nodeCount] != edgeTarget.length) {
+            throw new IOException("Corrupt edge index: " + file);
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            if (firstEdge[node + 1] < firstEdge[node]) {
+                throw new IOException("Corrupt edge index at node " + node + ": " + file);
+            }
+        }
+        for (int edge = 0; edge < edgeTarget.length; edge++) {
+            if (edgeTarget[edge] < 0 || edgeTarget[edge] >= nodeCount
+                    || edgeLength[edge] < 0 || edgeTime[edge] < 0
+                    || (edgeLength[edge] > 0 && edgeTime[edge] == 0)) {
+                throw new IOException("Corrupt edge " + edge + ": " + file);
+            }
+        }
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(nodeCount);
+        out.writeInt(edgeTarget.length);
+        for (int node = 0; node < nodeCount; node++) {
+            out.writeInt(latitudes[node]);
+            out.writeInt(longitudes[node]);
+        }
+        for (int value : firstEdge) {
+            out.writeInt(value);
+        }
+        for (int[] edgeValues : new int[][] {edgeTarget, edgeLengthInDecimeters, edgeTimeInDeciseconds}) {
+            for (int value : edgeValues) {
+                out.writeInt(value);
+            }
+        }
+        out.flush();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeTarget.length;
+    }
+
+    public double latitude(int node) {
+        return latitudes[node] / COORDINATE_FACTOR;
+    }
+
+    public double longitude(int node) {
+        return longitudes[node] / COORDINATE_FACTOR;
+    }
+
+    public int firstEdge(int node) {
+        return firstEdge[node];
+    }
+
+    public int endEdge(int node) {
+        return firstEdge[node + 1];
+    }
+
+    public int firstInEdge(int node) {
+        return firstInEdge[node];
+    }
+
+    public int endInEdge(int node) {
+        return firstInEdge[node + 1];
+    }
+
+    // Maps a position in the reverse adjacency to the forward edge index.
+    public int inEdge(int index) {
+        return inEdges[index];
+    }
+
+    public int edgeSource(int edge) {
+        int low = 0;
+        int high = nodeCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (firstEdge[middle] <= edge) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    public int edgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    public double edgeLengthInMeters(int edge) {
+        return edgeLengthInDecimeters[edge] / 10.0;
+    }
+
+    public double edgeTimeInSeconds(int edge) {
+        return edgeTimeInDeciseconds[edge] / 10.0;
+    }
+
+    /**
+     * Upper bound for the speed on any edge, used to derive admissible A* estimates.
+     */
+    public double getMaxSpeedInMetersPerSecond() {
+        return maxSpeedInMetersPerSecond;
+    }
+
+    /**
+     * Returns the node closest to the given position within maxDistanceInMeters, or -1.
+     */
+    public int nearestNode(double latitude, double longitude, double maxDistanceInMeters) {
+        int rings = (int) Math.ceil(maxDistanceInMeters
+                / (NODE_GRID_CELL_SIZE_IN_DEGREES * METERS_PER_DEGREE_LATITUDE
+                * Math.max(Math.cos(Math.toRadians(latitude)), 0.01)));
+        int row = cellIndex(latitude + 90);
+        int column = cellIndex(longitude + 180);
+
+        int nearest = -1;
+        double nearestDistance = maxDistanceInMeters;
+        for (int r = row - rings; r <= row + rings; r++) {
+            for (int c = column - rings; c <= column + rings; c++) {
+                if (r < 0 || c < 0) {
+                    continue;
+                }
+                long key = ((long) r << 16) | c;
+                int index = lowerBound(key);
+                for (; index < nodeCount && sortedCellKeys[index] == key; index++) {
+                    int node = nodesByCell[index];
+                    double distance = PackedShape.distanceInMeters(
+                            latitude, longitude, latitude(node), longitude(node));
+                    if (distance <= nearestDistance) {
+                        nearestDistance = distance;
+                        nearest = node;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = nodeCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedCellKeys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // 18000 rows and 36000 columns fit into 15 and 16 bits.
+    private static long cellKey(double latitude, double longitude) {
+        return ((long) cellIndex(latitude + 90) << 16) | cellIndex(longitude + 180);
+    }
+
+    private static int cellIndex(double shiftedDegrees) {
+        return (int) Math.floor(shiftedDegrees / NODE_GRID_CELL_SIZE_IN_DEGREES);
+    }
+}
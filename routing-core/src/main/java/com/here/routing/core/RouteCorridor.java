@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The area within a fixed distance of a route, for searching along it. The corridor is covered
+ * by square tiles of a grid: only tiles the corridor touches are listed, in the order the route
+ * reaches them, so a search issues one request per tile instead of searching the whole
+ * bounding box of the route. Results are then checked against the exact corridor.
+ *
+ * Building takes O(n log n) and may run on any thread. Instances are immutable.
+ */
+public final class RouteCorridor {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+
+    private final RouteMatcher matcher;
+    private final double widthInMeters;
+    private final double tileHeightInDegrees;
+    private final double tileWidthInDegrees;
+    private final double south;
+    private final double west;
+    // Row in the upper 32 bits, column in the lower 32 bits.
+    private final long[] tiles;
+
+    /**
+     * @param widthInMeters    maximum distance of a result from the route.
+     * @param tileSizeInMeters edge length of a search tile; larger tiles mean fewer requests
+     *                         but more results outside the corridor.
+     */
+    public RouteCorridor(PackedShape shape, double widthInMeters, double tileSizeInMeters) {
+        this.widthInMeters = widthInMeters;
+        matcher = new RouteMatcher(shape, widthInMeters);
+
+        double[] box = new double[4];
+        shape.boundingBox(box);
+        double cosLatitude = Math.max(Math.cos(Math.toRadians((box[0] + box[2]) / 2)), 0.01);
+        tileHeightInDegrees = tileSizeInMeters / METERS_PER_DEGREE_LATITUDE;
+        tileWidthInDegrees = tileHeightInDegrees / cosLatitude;
+        double marginLatitude = widthInMeters / METERS_PER_DEGREE_LATITUDE;
+        double marginLongitude = marginLatitude / cosLatitude;
+        south = box[0] - marginLatitude;
+        west = box[1] - marginLongitude;
+
+        // Walk each segment in steps of half a tile. Every point of the corridor is then within
+        // the width plus a quarter tile of a step, so widening each step by that covers it.
+        double stepInMeters = tileSizeInMeters / 2;
+        double reachLatitude = (widthInMeters + stepInMeters / 2) / METERS_PER_DEGREE_LATITUDE;
+        double reachLongitude = reachLatitude / cosLatitude;
+        Set<Long> touched = new LinkedHashSet<>();
+        for (int segment = 0; segment + 1 < shape.size(); segment++) {
+            double latitude1 = shape.latitude(segment);
+            double longitude1 = shape.longitude(segment);
+            double latitude2 = shape.latitude(segment + 1);
+            double longitude2 = shape.longitude(segment + 1);
+            double length = PackedShape.distanceInMeters(latitude1, longitude1, latitude2, longitude2);
+            int steps = Math.max(1, (int) Math.ceil(length / stepInMeters));
+            for (int step = 0; step <= steps; step++) {
+                double t = (double) step / steps;
+                double latitude = latitude1 + t * (latitude2 - latitude1);
+                double longitude = longitude1 + t * (longitude2 - longitude1);
+                int firstRow = row(latitude - reachLatitude);
+                int lastRow = row(latitude + reachLatitude);
+                int firstColumn = column(longitude - reachLongitude);
+                int lastColumn = column(longitude + reachLongitude);
+                for (int row = firstRow; row <= lastRow; row++) {
+                    for (int column = firstColumn; column <= lastColumn; column++) {
+                        touched.add(((long) row << 32) | (column & 0xFFFFFFFFL));
+                    }
+                }
+            }
+        }
+        tiles = new long[touched.size()];
+        int i = 0;
+        for (long tile : touched) {
+            tiles[i++] = tile;
+        }
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * Writes south, west, north and east of a tile into out.
+     */
+    public void getTile(int index, double[] out) {
+        int row = (int) (tiles[index] >> 32);
+        int column = (int) tiles[index];
+        out[0] = south + row * tileHeightInDegrees;
+        out[1] = west + column * tileWidthInDegrees;
+        out[2] = out[0] + tileHeightInDegrees;
+        out[3] = out[1] + tileWidthInDegrees;
+    }
+
+    public double getWidthInMeters() {
+        return widthInMeters;
+    }
+
+    /**
+     * @return where the position is closest to the route, or null if it is outside the corridor.
+     */
+    public RouteMatcher.Match match(double latitude, double longitude) {
+        return matcher.match(latitude, longitude, -1);
+    }
+
+    /**
+     * Extra distance for a stop at a matched position: leaving the route at the closest point
+     * and coming back to it. A lower bound, as roads are rarely straight.
+     */
+    public static double detourInMeters(RouteMatcher.Match match) {
+        return 2 * match.distanceToRouteInMeters;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCorridor: " + tiles.length + " tiles, width " + widthInMeters + " m";
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor((latitude - south) / tileHeightInDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) Math.floor((longitude - west) / tileWidthInDegrees);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Locale;
+
+/**
+ * Text shown to the user for routes and maneuvers.
+ */
+public final class RouteFormatter {
+
+    private RouteFormatter() {
+    }
+
+    /**
+     * Formats a duration as hours and minutes, e.g. "01:25".
+     */
+    public static String formatTime(int seconds) {
+        int hours = seconds / 3600;
+        int minutes = (seconds % 3600) / 60;
+
+        return String.format(Locale.getDefault(), "%02d:%02d", hours, minutes);
+    }
+
+    /**
+     * Formats a length as kilometers and meters, e.g. "12.340 km".
+     */
+    public static String formatLength(int meters) {
+        int kilometers = meters / 1000;
+        int remainingMeters = meters % 1000;
+
+        return String.format(Locale.getDefault(), "%02d.%03d km", kilometers, remainingMeters);
+    }
+
+    public static String formatRouteDetails(RouteResult route) {
+        return "Travel Time: " + formatTime(route.getTravelTimeInSeconds())
+                + ", Length: " + formatLength(route.getLengthInMeters());
+    }
+
+    public static String formatManeuver(RouteManeuver maneuver) {
+        return maneuver.text
+                + ", Action: " + maneuver.action
+                + ", Location: " + maneuver.latitude + ", " + maneuver.longitude;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * A single maneuver of a route, independent of the routing engine that produced it.
+ */
+public final class RouteManeuver {
+
+    public final String text;
+    // Name of the maneuver action, e.g. "LEFT_TURN". For the HERE engine this is the name of the ManeuverAction.
+    public final String action;
+    public final double latitude;
+    public final double longitude;
+
+    public RouteManeuver(String text, String action, double latitude, double longitude) {
+        this.text = text;
+        this.action = action;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    @Override
+    public String toString() {
+        return text + ", Action: " + action + ", Location: " + latitude + ", " + longitude;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Arrays;
+
+/**
+ * Matches positions against a route shape. The segments of the shape are indexed in a grid
+ * whose cells are as large as the search radius. Cells are keyed by row and column, so the
+ * extent of the route is not limited; the keys of the touched cells are kept in a sorted array,
+ * and the (cell, segment) pairs in another one that refers to cells by their position in it.
+ * A match binary-searches the 3 x 3 cells around the position, so it costs O(log n) plus the
+ * few segments close by, instead of a scan of the whole route.
+ *
+ * Building the index takes O(n log n) and may run on any thread. Instances are immutable.
+ */
+public final class RouteMatcher {
+
+    private static final double METERS_PER_DEGREE_LATITUDE = 111_320;
+    // Matching a segment before the last matched one costs this much extra distance, so that
+    // routes passing the same road twice are followed in driving order.
+    private static final double BACKTRACK_PENALTY_IN_METERS = 20;
+
+    /**
+     * The point of the route closest to a position.
+     */
+    public static final class Match {
+        // The route segment from vertex segmentIndex to segmentIndex + 1.
+        public final int segmentIndex;
+        public final double distanceToRouteInMeters;
+        public final double distanceAlongRouteInMeters;
+        public final double latitude;
+        public final double longitude;
+
+        Match(int segmentIndex, double distanceToRouteInMeters, double distanceAlongRouteInMeters,
+              double latitude, double longitude) {
+            this.segmentIndex = segmentIndex;
+            this.distanceToRouteInMeters = distanceToRouteInMeters;
+            this.distanceAlongRouteInMeters = distanceAlongRouteInMeters;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private final PackedShape shape;
+    private final double searchRadiusInMeters;
+    private final double cellHeightInDegrees;
+    private final double cellWidthInDegrees;
+    private final double south;
+    private final double west;
+    private final int lastRow;
+    private final int lastColumn;
+    // Sorted and distinct keys of the cells that segments touch, see cellKey().
+    private final long[] cellKeys;
+    // Sorted; the position of the cell in cellKeys in the upper 32 bits, the segment index in
+    // the lower 32 bits.
+    private final long[] cellSegments;
+    // Distance from the start of the route to each vertex.
+    private final double[] distancesAlongRoute;
+
+    /**
+     * @param searchRadiusInMeters positions farther than this from the route do not match.
+     */
+    public RouteMatcher(PackedShape shape, double searchRadiusInMeters) {
+        if (shape.size() < 2) {
+            throw new IllegalArgumentException("A route needs at least two vertices: " + shape.size());
+        }
+        this.shape = shape;
+        this.searchRadiusInMeters = searchRadiusInMeters;
+
+        double[] box = new double[4];
+        shape.boundingBox(box);
+        south = box[0];
+        west = box[1];
+        double cosLatitude = Math.max(Math.cos(Math.toRadians((box[0] + box[2]) / 2)), 0.01);
+        cellHeightInDegrees = searchRadiusInMeters / METERS_PER_DEGREE_LATITUDE;
+        cellWidthInDegrees = cellHeightInDegrees / cosLatitude;
+        lastRow = row(box[2]);
+        lastColumn = column(box[3]);
+
+        distancesAlongRoute = new double[shape.size()];
+        // Cell key and segment index, alternating.
+        long[] pairs = new long[4 * shape.size()];
+        int pairCount = 0;
+        for (int segment = 0; segment + 1 < shape.size(); segment++) {
+            distancesAlongRoute[segment + 1] = distancesAlongRoute[segment] + PackedShape.distanceInMeters(
+                    shape.latitude(segment), shape.longitude(segment),
+                    shape.latitude(segment + 1), shape.longitude(segment + 1));
+
+            // Every cell touched by the bounding box of the segment.
+            int firstRow = row(Math.min(shape.latitude(segment), shape.latitude(segment + 1)));
+            int lastRow = row(Math.max(shape.latitude(segment), shape.latitude(segment + 1)));
+            int firstColumn = column(Math.min(shape.longitude(segment), shape.longitude(segment + 1)));
+            int lastColumn = column(Math.max(shape.longitude(segment), shape.longitude(segment + 1)));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+                    }
+                    pairs[pairCount++] = cellKey(row, column);
+                    pairs[pairCount++] = segment;
+                }
+            }
+        }
+
+        // Number the touched cells in key order, then pair those numbers with the segments.
+        int cellPairCount = pairCount / 2;
+        long[] keys = new long[cellPairCount];
+        for (int i = 0; i < cellPairCount; i++) {
+            keys[i] = pairs[2 * i];
+        }
+        Arrays.sort(keys);
+        int keyCount = 0;
+        for (int i = 0; i < cellPairCount; i++) {
+            if (keyCount == 0 || keys[keyCount - 1] != keys[i]) {
+                keys[keyCount++] = keys[i];
+            }
+        }
+        cellKeys = Arrays.copyOf(keys, keyCount);
+        cellSegments = new long[cellPairCount];
+        for (int i = 0; i < cellPairCount; i++) {
+            long cell = Arrays.binarySearch(cellKeys, pairs[2 * i]);
+            cellSegments[i] = (cell << 32) | pairs[2 * i + 1];
+        }
+        Arrays.sort(cellSegments);
+    }
+
+    public PackedShape getShape() {
+        return shape;
+    }
+
+    public double getLengthInMeters() {
+        return distancesAlongRoute[distancesAlongRoute.length - 1];
+    }
+
+    /**
+     * @param lastSegmentIndex segment of the previous match, or -1.
+     * @return the closest point of the route within the search radius, or null.
+     */
+    public Match match(double latitude, double longitude, int lastSegmentIndex) {
+        int centerRow = (int) Math.floor((latitude - south) / cellHeightInDegrees);
+        int centerColumn = (int) Math.floor((longitude - west) / cellWidthInDegrees);
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+
+        int bestSegment = -1;
+        double bestScore = Double.POSITIVE_INFINITY;
+        double bestDistance = 0;
+        double bestT = 0;
+        for (int row = Math.max(centerRow - 1, 0); row <= Math.min(centerRow + 1, lastRow); row++) {
+            for (int column = Math.max(centerColumn - 1, 0);
+                 column <= Math.min(centerColumn + 1, lastColumn); column++) {
+                long cell = Arrays.binarySearch(cellKeys, cellKey(row, column));
+                if (cell < 0) {
+                    continue;
+                }
+                for (int i = lowerBound(cell << 32); i < cellSegments.length && (cellSegments[i] >>> 32) == cell; i++) {
+                    int segment = (int) cellSegments[i];
+                    // Project into meters relative to the position.
+                    double ax = (shape.longitude(segment) - longitude) * METERS_PER_DEGREE_LATITUDE * cosLatitude;
+                    double ay = (shape.latitude(segment) - latitude) * METERS_PER_DEGREE_LATITUDE;
+                    double bx = (shape.longitude(segment + 1) - longitude) * METERS_PER_DEGREE_LATITUDE * cosLatitude;
+                    double by = (shape.latitude(segment + 1) - latitude) * METERS_PER_DEGREE_LATITUDE;
+                    double dx = bx - ax;
+                    double dy = by - ay;
+                    double lengthSquared = dx * dx + dy * dy;
+                    double t = lengthSquared > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared)) : 0;
+                    double px = ax + t * dx;
+                    double py = ay + t * dy;
+                    double distance = Math.sqrt(px * px + py * py);
+                    if (distance > searchRadiusInMeters) {
+                        continue;
+                    }
+                    double score = segment < lastSegmentIndex ? distance + BACKTRACK_PENALTY_IN_METERS : distance;
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestSegment = segment;
+                        bestDistance = distance;
+                        bestT = t;
+                    }
+                }
+            }
+        }
+        if (bestSegment == -1) {
+            return null;
+        }
+
+        double matchedLatitude = shape.latitude(bestSegment)
+                + bestT * (shape.latitude(bestSegment + 1) - shape.latitude(bestSegment));
+        double matchedLongitude = shape.longitude(bestSegment)
+                + bestT * (shape.longitude(bestSegment + 1) - shape.longitude(bestSegment));
+        double alongRoute = distancesAlongRoute[bestSegment]
+                + bestT * (distancesAlongRoute[bestSegment + 1] - distancesAlongRoute[bestSegment]);
+        return new Match(bestSegment, bestDistance, alongRoute, matchedLatitude, matchedLongitude);
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = cellSegments.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cellSegments[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Rows and columns are not negative, so keys sort by row and then by column.
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    private int row(double latitude) {
+        return (int) ((latitude - south) / cellHeightInDegrees);
+    }
+
+    private int column(double longitude) {
+        return (int) ((longitude - west) / cellWidthInDegrees);
+    }
+}
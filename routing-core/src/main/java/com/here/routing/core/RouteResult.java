@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A calculated route, independent of the routing engine that produced it.
+ */
+public final class RouteResult {
+
+    private final PackedShape shape;
+    private final int lengthInMeters;
+    private final int travelTimeInSeconds;
+    // Maneuvers per route leg; a route with n waypoints has n - 1 legs.
+    private final List<List<RouteManeuver>> legManeuvers;
+
+    public RouteResult(PackedShape shape, int lengthInMeters, int travelTimeInSeconds,
+                       List<List<RouteManeuver>> legManeuvers) {
+        this.shape = shape;
+        this.lengthInMeters = lengthInMeters;
+        this.travelTimeInSeconds = travelTimeInSeconds;
+        this.legManeuvers = Collections.unmodifiableList(legManeuvers);
+    }
+
+    public PackedShape getShape() {
+        return shape;
+    }
+
+    public int getLengthInMeters() {
+        return lengthInMeters;
+    }
+
+    public int getTravelTimeInSeconds() {
+        return travelTimeInSeconds;
+    }
+
+    public List<List<RouteManeuver>> getLegManeuvers() {
+        return legManeuvers;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+/**
+ * Finds a short order for visiting a list of stops between a fixed start and a fixed
+ * destination. The order is built with the nearest-neighbor heuristic and then improved
+ * with 2-opt and Or-opt moves until no move helps or the time budget is used up.
+ *
+ * Stop 0 is the start and stop n-1 the destination; both stay in place.
+ */
+public class StopOrderOptimizer {
+
+    /**
+     * Cost of traveling from one stop to another, e.g. travel time or distance.
+     * Costs do not need to be symmetric.
+     */
+    public interface CostFunction {
+        double cost(int from, int to);
+    }
+
+    // Longest run of consecutive stops that an Or-opt move relocates.
+    private static final int MAX_OR_OPT_SEGMENT_LENGTH = 3;
+
+    private final long timeBudgetNanos;
+
+    public StopOrderOptimizer(long timeBudgetMillis) {
+        this.timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+    }
+
+    /**
+     * Evaluates the cost function once per pair of stops.
+     *
+     * @return the matrix in row-major order: entry from * stopCount + to.
+     */
+    public static double[] buildCostMatrix(int stopCount, CostFunction costFunction) {
+        double[] matrix = new double[stopCount * stopCount];
+        for (int from = 0; from < stopCount; from++) {
+            for (int to = 0; to < stopCount; to++) {
+                matrix[from * stopCount + to] = from == to ? 0 : costFunction.cost(from, to);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @return the indices of the stops in visiting order, starting with 0 and ending with stopCount - 1.
+     */
+    public int[] optimize(int stopCount, CostFunction costFunction) {
+        return optimize(stopCount, buildCostMatrix(stopCount, costFunction));
+    }
+
+    public int[] optimize(int stopCount, double[] costMatrix) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        int[] tour = nearestNeighborTour(stopCount, costMatrix);
+        if (stopCount <= 3) {
+            return tour;
+        }
+
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = improveWithTwoOpt(tour, costMatrix, stopCount, deadline);
+            improved |= improveWithOrOpt(tour, costMatrix, stopCount, deadline);
+        }
+        return tour;
+    }
+
+    public static double tourCost(int[] tour, double[] costMatrix, int stopCount) {
+        double cost = 0;
+        for (int i = 1; i < tour.length; i++) {
+            cost += costMatrix[tour[i - 1] * stopCount + tour[i]];
+        }
+        return cost;
+    }
+
+    private static int[] nearestNeighborTour(int stopCount, double[] costMatrix) {
+        int[] tour = new int[stopCount];
+        if (stopCount == 0) {
+            return tour;
+        }
+        boolean[] visited = new boolean[stopCount];
+        tour[0] = 0;
+        visited[0] = true;
+        tour[stopCount - 1] = stopCount - 1;
+        visited[stopCount - 1] = true;
+
+        for (int position = 1; position < stopCount - 1; position++) {
+            int current = tour[position - 1];
+            int nearest = -1;
+            double nearestCost = Double.POSITIVE_INFINITY;
+            for (int candidate = 0; candidate < stopCount; candidate++) {
+                double cost = costMatrix[current * stopCount + candidate];
+                if (!visited[candidate] && (nearest == -1 || cost < nearestCost)) {
+                    nearest = candidate;
+                    nearestCost = cost;
+                }
+            }
+            tour[position] = nearest;
+            visited[nearest] = true;
+        }
+        return tour;
+    }
+
+    // Reverses tour[i..j] whenever that makes the tour cheaper. Because costs may be asymmetric,
+    // the reversed inner part costs its backward sum, not its forward sum. Both are kept as
+    // prefix sums, so each move is evaluated in constant time; they are rebuilt after a move.
+    private static boolean improveWithTwoOpt(int[] tour, double[] costMatrix, int stopCount, long deadline) {
+        double[] forward = new double[tour.length];
+        double[] backward = new double[tour.length];
+        buildPrefixSums(tour, costMatrix, stopCount, forward, backward);
+        boolean improved = false;
+        for (int i = 1; i < tour.length - 2; i++) {
+            for (int j = i + 1; j < tour.length - 1; j++) {
+                double before = forward[j + 1] - forward[i - 1];
+                double after = cost(costMatrix, stopCount, tour[i - 1], tour[j])
+                        + backward[j] - backward[i]
+                        + cost(costMatrix, stopCount, tour[i], tour[j + 1]);
+                if (after < before - 1e-9) {
+                    reverse(tour, i, j);
+                    buildPrefixSums(tour, costMatrix, stopCount, forward, backward);
+                    improved = true;
+                }
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        return improved;
+    }
+
+    // forward[k] is the cost from tour[0] to tour[k]; backward[k] the cost of the same stops
+    // traveled in reverse.
+    private static void buildPrefixSums(int[] tour, double[] costMatrix, int stopCount,
+                                        double[] forward, double[] backward) {
+        for (int k = 1; k < tour.length; k++) {
+            forward[k] = forward[k - 1] + cost(costMatrix, stopCount, tour[k - 1], tour[k]);
+            backward[k] = backward[k - 1] + cost(costMatrix, stopCount, tour[k], tour[k - 1]);
+        }
+    }
+
+    // Moves runs of 1 to MAX_OR_OPT_SEGMENT_LENGTH stops to the cheapest other position.
+    private static boolean improveWithOrOpt(int[] tour, double[] costMatrix, int stopCount, long deadline) {
+        boolean improved = false;
+        int[] scratch = new int[tour.length];
+        for (int length = 1; length <= MAX_OR_OPT_SEGMENT_LENGTH; length++) {
+            for (int start = 1; start + length < tour.length; start++) {
+                int end = start + length - 1;
+                int before = tour[start - 1];
+                int first = tour[start];
+                int last = tour[end];
+                int after = tour[end + 1];
+                double removalGain = cost(costMatrix, stopCount, before, first)
+                        + cost(costMatrix, stopCount, last, after)
+                        - cost(costMatrix, stopCount, before, after);
+
+                int bestPosition = -1;
+                double bestDelta = -1e-9;
+                // Insert between tour[position] and tour[position + 1], outside of the moved run.
+                for (int position = 0; position < tour.length - 1; position++) {
+                    if (position >= start - 1 && position <= end) {
+                        continue;
+                    }
+                    int left = tour[position];
+                    int right = tour[position + 1];
+                    double insertionCost = cost(costMatrix, stopCount, left, first)
+                            + cost(costMatrix, stopCount, last, right)
+                            - cost(costMatrix, stopCount, left, right);
+                    double delta = insertionCost - removalGain;
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestPosition = position;
+                    }
+                }
+
+                if (bestPosition != -1) {
+                    moveRun(tour, scratch, start, end, bestPosition);
+                    improved = true;
+                }
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        return improved;
+    }
+
+    // Moves tour[start..end] so that it follows the stop currently at tour[position].
+    private static void moveRun(int[] tour, int[] scratch, int start, int end, int position) {
+        int next = 0;
+        for (int i = 0; i < tour.length; i++) {
+            if (i >= start && i <= end) {
+                continue;
+            }
+            scratch[next++] = tour[i];
+            if (i == position) {
+                for (int j = start; j <= end; j++) {
+                    scratch[next++] = tour[j];
+                }
+            }
+        }
+        System.arraycopy(scratch, 0, tour, 0, tour.length);
+    }
+
+    private static double cost(double[] costMatrix, int stopCount, int from, int to) {
+        return costMatrix[from * stopCount + to];
+    }
+
+    private static void reverse(int[] tour, int i, int j) {
+        while (i < j) {
+            int swap = tour[i];
+            tour[i++] = tour[j];
+            tour[j--] = swap;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlexiblePolylineTest {
+
+    // From the specification of the format: four points at precision 5, without and with a
+    // third dimension.
+    private static final String REFERENCE = "BFoz5xJ67i1B1B7PzIhaxL7Y";
+    private static final String REFERENCE_3D = "BlBoz5xJ67i1BU1B7PUzIhaUxL7YU";
+    private static final double[] REFERENCE_LATITUDES = {50.10228, 50.10201, 50.10063, 50.09878};
+    private static final double[] REFERENCE_LONGITUDES = {8.69821, 8.69567, 8.6915, 8.68752};
+
+    @Test
+    public void decodesReferenceVector() {
+        PackedShape shape = FlexiblePolyline.decode(REFERENCE);
+        assertReferencePoints(shape);
+        assertEquals(5, new FlexiblePolyline.Decoder(REFERENCE).getPrecision());
+    }
+
+    @Test
+    public void encodesReferenceVector() {
+        PackedShape shape = new PackedShape(REFERENCE_LATITUDES, REFERENCE_LONGITUDES, REFERENCE_LATITUDES.length);
+        assertEquals(REFERENCE, FlexiblePolyline.encode(shape, 5));
+    }
+
+    @Test
+    public void skipsThirdDimension() {
+        assertReferencePoints(FlexiblePolyline.decode(REFERENCE_3D));
+    }
+
+    @Test
+    public void roundsToHalfAUnitAtEveryPrecision() {
+        Random random = new Random(1);
+        int size = 200;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+        PackedShape shape = new PackedShape(latitudes, longitudes, size);
+        // Beyond 10 digits, doubles cannot hold the coordinates exactly enough for this bound.
+        for (int precision = 0; precision <= 10; precision++) {
+            PackedShape decoded = FlexiblePolyline.decode(FlexiblePolyline.encode(shape, precision));
+            assertEquals(size, decoded.size());
+            double bound = 0.5 * Math.pow(10, -precision) + 1e-12;
+            for (int i = 0; i < size; i++) {
+                assertTrue("precision " + precision + ", latitude " + latitudes[i],
+                        Math.abs(decoded.latitude(i) - latitudes[i]) <= bound);
+                assertTrue("precision " + precision + ", longitude " + longitudes[i],
+                        Math.abs(decoded.longitude(i) - longitudes[i]) <= bound);
+            }
+        }
+    }
+
+    @Test
+    public void decodesEmptyShape() {
+        String encoded = FlexiblePolyline.encode(new PackedShape(new double[0], new double[0], 0), 5);
+        assertEquals(0, FlexiblePolyline.decode(encoded).size());
+        assertFalse(new FlexiblePolyline.Decoder(encoded).next());
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        for (String encoded : new String[] {"", "C", "BFoz5x!", "BFoz5", "BF" + REFERENCE.substring(2, 9)}) {
+            try {
+                FlexiblePolyline.decode(encoded);
+                fail("Decoded \"" + encoded + "\"");
+            } catch (IllegalArgumentException expected) {
+                // The format is checked.
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPrecisionOutOfRange() {
+        new FlexiblePolyline.Encoder(FlexiblePolyline.MAX_PRECISION + 1, new StringBuilder());
+    }
+
+    @Test
+    public void roundTripsManeuvers() {
+        List<RouteManeuver> maneuvers = Arrays.asList(
+                new RouteManeuver("Turn left onto S Halsted St.", "LEFT_TURN", 41.87166, -87.64743),
+                new RouteManeuver(null, null, 41.87, -87.6),
+                new RouteManeuver("Biegen Sie links in die Straße der Pariser Kommune ab. → 🚗",
+                        "LEFT_TURN", -33.86785, 151.20732),
+                new RouteManeuver("", "ARRIVE", 0, 0));
+        List<RouteManeuver> decoded = FlexiblePolyline.decodeManeuvers(FlexiblePolyline.encodeManeuvers(maneuvers, 6));
+        assertEquals(maneuvers.size(), decoded.size());
+        for (int i = 0; i < maneuvers.size(); i++) {
+            RouteManeuver expected = maneuvers.get(i);
+            RouteManeuver actual = decoded.get(i);
+            assertEquals(expected.text, actual.text);
+            assertEquals(expected.action, actual.action);
+            assertEquals(expected.latitude, actual.latitude, 0.5e-6);
+            assertEquals(expected.longitude, actual.longitude, 0.5e-6);
+        }
+        assertNull(decoded.get(1).text);
+        assertNull(decoded.get(1).action);
+    }
+
+    @Test
+    public void roundTripsNoManeuvers() {
+        assertTrue(FlexiblePolyline.decodeManeuvers(
+                FlexiblePolyline.encodeManeuvers(Arrays.<RouteManeuver>asList(), 5)).isEmpty());
+    }
+
+    @Test
+    public void rejectsMalformedManeuvers() {
+        String encoded = FlexiblePolyline.encodeManeuvers(Arrays.asList(
+                new RouteManeuver("Head north.", "DEPART", 41.87, -87.64)), 5);
+        for (String malformed : new String[] {"", "C", encoded.substring(0, encoded.length() - 1),
+                encoded.replace('H', '!')}) {
+            try {
+                FlexiblePolyline.decodeManeuvers(malformed);
+                fail("Decoded \"" + malformed + "\"");
+            } catch (IllegalArgumentException expected) {
+                // The format is checked.
+            }
+        }
+    }
+
+    private static void assertReferencePoints(PackedShape shape) {
+        assertEquals(REFERENCE_LATITUDES.length, shape.size());
+        for (int i = 0; i < shape.size(); i++) {
+            assertEquals(REFERENCE_LATITUDES[i], shape.latitude(i), 1e-9);
+            assertEquals(REFERENCE_LONGITUDES[i], shape.longitude(i), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class GraphRouteBuilderTest {
+
+    // Three nodes on a line, 0 <-> 1 <-> 2, about 111 m apart.
+    private static RoadGraph lineGraph() {
+        return new RoadGraph(
+                new int[] {418_700_000, 418_710_000, 418_720_000},
+                new int[] {-876_400_000, -876_400_000, -876_400_000},
+                new int[] {0, 1, 3, 4},
+                new int[] {1, 0, 2, 1},
+                new int[] {1113, 1113, 1113, 1113},
+                new int[] {100, 100, 100, 100});
+    }
+
+    @Test
+    public void buildsRouteAlongPath() {
+        RoadGraph graph = lineGraph();
+        BidirectionalAStar.Path path = new BidirectionalAStar(graph).findPath(0, 2);
+        RouteResult route = GraphRouteBuilder.build(graph, Collections.singletonList(path), 41.872, -87.64);
+
+        assertEquals(3, route.getShape().size());
+        assertEquals(223, route.getLengthInMeters());
+        assertEquals(20, route.getTravelTimeInSeconds());
+        assertEquals(41.872, route.getShape().latitude(2), 1e-9);
+    }
+
+    @Test
+    public void leadsToDestinationWhenWaypointsSnapToSameNode() {
+        RoadGraph graph = lineGraph();
+        BidirectionalAStar.Path path = new BidirectionalAStar(graph).findPath(1, 1);
+        RouteResult route = GraphRouteBuilder.build(graph, Collections.singletonList(path), 41.87105, -87.64);
+
+        PackedShape shape = route.getShape();
+        assertEquals(2, shape.size());
+        assertEquals(graph.latitude(1), shape.latitude(0), 1e-9);
+        assertEquals(41.87105, shape.latitude(1), 1e-9);
+        assertEquals(-87.64, shape.longitude(1), 1e-9);
+        // Such a route can be matched and shown like any other.
+        new RouteMatcher(shape, 20);
+    }
+
+    @Test
+    public void keepsSharedWaypointNodeOnce() {
+        RoadGraph graph = lineGraph();
+        BidirectionalAStar search = new BidirectionalAStar(graph);
+        RouteResult route = GraphRouteBuilder.build(graph,
+                Arrays.asList(search.findPath(0, 1), search.findPath(1, 1), search.findPath(1, 2)), 41.872, -87.64);
+
+        assertEquals(3, route.getShape().size());
+        assertEquals(3, route.getLegManeuvers().size());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RoadGraphTest {
+
+    private static RoadGraph graph(int[] edgeLength, int[] edgeTime) {
+        return new RoadGraph(
+                new int[] {418_700_000, 418_710_000},
+                new int[] {-876_400_000, -876_400_000},
+                new int[] {0, 1, 2},
+                new int[] {1, 0},
+                edgeLength, edgeTime);
+    }
+
+    private static RoadGraph writeAndRead(RoadGraph graph) throws IOException {
+        File file = File.createTempFile("road-graph", ".bin");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                graph.write(out);
+            }
+            return RoadGraph.read(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        RoadGraph graph = writeAndRead(graph(new int[] {1113, 1113}, new int[] {100, 80}));
+        assertEquals(2, graph.getNodeCount());
+        assertEquals(2, graph.getEdgeCount());
+        assertEquals(8.0, graph.edgeTimeInSeconds(1), 1e-9);
+    }
+
+    @Test
+    public void acceptsEdgesWithoutLengthAndTime() throws IOException {
+        assertEquals(2, writeAndRead(graph(new int[] {0, 1113}, new int[] {0, 100})).getEdgeCount());
+    }
+
+    @Test
+    public void rejectsEdgesWithLengthButNoTime() {
+        try {
+            writeAndRead(graph(new int[] {1113, 1113}, new int[] {100, 0}));
+            fail("Read an edge that takes no time");
+        } catch (IOException expected) {
+            // The A* potential would no longer be a lower bound.
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2019 HERE Europe B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ * License-Filename: LICENSE
+ */
+
+package com.here.routing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StopOrderOptimizerTest {
+
+    private static final long TIME_BUDGET_MILLIS = 1000;
+
+    @Test
+    public void keepsStartAndDestinationAndVisitsEveryStop() {
+        int stopCount = 12;
+        int[] order = new StopOrderOptimizer(TIME_BUDGET_MILLIS)
+                .optimize(stopCount, randomMatrix(stopCount, new Random(1), false));
+        assertEquals(0, order[0]);
+        assertEquals(stopCount - 1, order[stopCount - 1]);
+        boolean[] seen = new boolean[stopCount];
+        for (int stop : order) {
+            assertTrue("Visited twice: " + stop, !seen[stop]);
+            seen[stop] = true;
+        }
+    }
+
+    @Test
+    public void handlesTinyInputs() {
+        StopOrderOptimizer optimizer = new StopOrderOptimizer(TIME_BUDGET_MILLIS);
+        assertArrayEquals(new int[0], optimizer.optimize(0, new double[0]));
+        assertArrayEquals(new int[] {0}, optimizer.optimize(1, new double[1]));
+        assertArrayEquals(new int[] {0, 1}, optimizer.optimize(2, new double[4]));
+        assertArrayEquals(new int[] {0, 1, 2}, optimizer.optimize(3, new double[9]));
+    }
+
+    // Stops on a line, numbered out of order. The only optimal order visits them by position.
+    @Test
+    public void findsKnownOptimumOnALine() {
+        int[] positions = {0, 7, 3, 9, 1, 5, 8, 2, 6, 4, 10};
+        StopOrderOptimizer.CostFunction distance = (from, to) -> Math.abs(positions[from] - positions[to]);
+        int[] order = new StopOrderOptimizer(TIME_BUDGET_MILLIS).optimize(positions.length, distance);
+        for (int i = 0; i < order.length; i++) {
+            assertEquals(i, positions[order[i]]);
+        }
+    }
+
+    // A one-way ring: following it costs 1 per step, anything else 100. Reversing a part of the
+    // tour is cheap under symmetric costs but not here, which the optimizer must notice.
+    @Test
+    public void followsOneWayRing() {
+        int[] ring = {0, 5, 2, 7, 1, 4, 6, 3, 8};
+        int stopCount = ring.length;
+        double[] matrix = new double[stopCount * stopCount];
+        Arrays.fill(matrix, 100);
+        for (int i = 0; i + 1 < stopCount; i++) {
+            matrix[ring[i] * stopCount + ring[i + 1]] = 1;
+        }
+        int[] order = new StopOrderOptimizer(TIME_BUDGET_MILLIS).optimize(stopCount, matrix);
+        assertArrayEquals(ring, order);
+        assertEquals(stopCount - 1, StopOrderOptimizer.tourCost(order, matrix, stopCount), 1e-9);
+    }
+
+    @Test
+    public void matchesBruteForceOnSmallAsymmetricInstances() {
+        Random random = new Random(7);
+        for (int instance = 0; instance < 20; instance++) {
+            int stopCount = 8;
+            double[] matrix = randomMatrix(stopCount, random, true);
+            int[] order = new StopOrderOptimizer(TIME_BUDGET_MILLIS).optimize(stopCount, matrix);
+            double optimum = bruteForceOptimum(stopCount, matrix);
+            double cost = StopOrderOptimizer.tourCost(order, matrix, stopCount);
+            // Local search may end in a local optimum, but never far from the best order.
+            assertTrue("Instance " + instance + ": " + cost + " vs. " + optimum, cost <= optimum * 1.25 + 1e-9);
+        }
+    }
+
+    @Test
+    public void neverWorseThanTheGivenOrder() {
+        Random random = new Random(11);
+        for (int instance = 0; instance < 20; instance++) {
+            int stopCount = 30;
+            double[] matrix = randomMatrix(stopCount, random, instance % 2 == 0);
+            int[] identity = new int[stopCount];
+            for (int i = 0; i < stopCount; i++) {
+                identity[i] = i;
+            }
+            int[] order = new StopOrderOptimizer(TIME_BUDGET_MILLIS).optimize(stopCount, matrix);
+            assertTrue(StopOrderOptimizer.tourCost(order, matrix, stopCount)
+                    <= StopOrderOptimizer.tourCost(identity, matrix, stopCount) + 1e-9);
+        }
+    }
+
+    @Test
+    public void buildsCostMatrixWithOneCallPerPair() {
+        int[] calls = {0};
+        double[] matrix = StopOrderOptimizer.buildCostMatrix(4, (from, to) -> {
+            calls[0]++;
+            return 10 * from + to;
+        });
+        assertEquals(12, calls[0]);
+        assertEquals(0, matrix[2 * 4 + 2], 0);
+        assertEquals(23, matrix[2 * 4 + 3], 0);
+        assertEquals(32, matrix[3 * 4 + 2], 0);
+    }
+
+    // Random points in a square; asymmetric instances add a random one-way surcharge.
+    private static double[] randomMatrix(int stopCount, Random random, boolean asymmetric) {
+        double[] x = new double[stopCount];
+        double[] y = new double[stopCount];
+        for (int i = 0; i < stopCount; i++) {
+            x[i] = random.nextDouble() * 1000;
+            y[i] = random.nextDouble() * 1000;
+        }
+        double[] matrix = new double[stopCount * stopCount];
+        for (int from = 0; from < stopCount; from++) {
+            for (int to = 0; to < stopCount; to++) {
+                if (from != to) {
+                    matrix[from * stopCount + to] = Math.hypot(x[from] - x[to], y[from] - y[to])
+                            + (asymmetric ? random.nextDouble() * 300 : 0);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private static double bruteForceOptimum(int stopCount, double[] matrix) {
+        int[] tour = new int[stopCount];
+        for (int i = 0; i < stopCount; i++) {
+            tour[i] = i;
+        }
+        return permute(tour, 1, matrix, stopCount);
+    }
+
+    // Tries every order of tour[position..stopCount - 2].
+    private static double permute(int[] tour, int position, double[] matrix, int stopCount) {
+        if (position >= stopCount - 2) {
+            return StopOrderOptimizer.tourCost(tour, matrix, stopCount);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = position; i < stopCount - 1; i++) {
+            swap(tour, position, i);
+            best = Math.min(best, permute(tour, position + 1, matrix, stopCount));
+            swap(tour, position, i);
+        }
+        return best;
+    }
+
+    private static void swap(int[] tour, int i, int j) {
+        int swap = tour[i];
+        tour[i] = tour[j];
+        tour[j] = swap;
+    }
+}